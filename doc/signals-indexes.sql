@@ -0,0 +1,21 @@
+-- Indexes used by the keyset-paginated signal queries (GET /api/signal/page).
+-- Every page is a range scan of one index ordered by (created_at, id); filter
+-- columns are included, so rows not matching the filters are skipped without
+-- reading the table. The signals table is created by signomix-common; the
+-- columns named here are those of SignalQueryDao.COLUMN_NAMES, which the
+-- service checks at startup (an error naming missing columns is logged and
+-- signal pages are refused). Create the indexes only when that check passes.
+-- Run once on the oltp database, e.g.:
+--   psql "$POSTGRES_URL" -f doc/signals-indexes.sql
+
+CREATE INDEX IF NOT EXISTS signals_user_created_idx
+    ON signals (user_id, created_at DESC, id DESC)
+    INCLUDE (device_eui, level, sentinel_config_id);
+
+CREATE INDEX IF NOT EXISTS signals_user_device_created_idx
+    ON signals (user_id, device_eui, created_at DESC, id DESC)
+    INCLUDE (level, sentinel_config_id);
+
+-- Used by the retention job, which deletes the oldest signals in chunks.
+CREATE INDEX IF NOT EXISTS signals_created_idx
+    ON signals (created_at);
@@ -0,0 +1,147 @@
+package com.signomix.sentinel.domain;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import org.jboss.logging.Logger;
+
+import com.signomix.common.db.SentinelDaoIface;
+import com.signomix.common.iot.sentinel.AlarmCondition;
+import com.signomix.common.iot.sentinel.SentinelConfig;
+
+/**
+ * Test data and in-memory fakes shared by the benchmarks.
+ */
+public final class BenchmarkData {
+
+    public static final String DEVICE_EUI = "BENCH-0001";
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Limits logging of the benchmarked code to warnings.
+     */
+    public static void quietLogging() {
+        java.util.logging.Logger.getLogger("").setLevel(Level.WARNING);
+    }
+
+    public static Logger logger(Class<?> type) {
+        return Logger.getLogger(type);
+    }
+
+    /**
+     * @param eui          the device EUI
+     * @param measurements number of measurements (t0..tN)
+     * @return data-received payload
+     */
+    public static byte[] payload(String eui, int measurements) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(eui).append(",1,bench device,1,0,52.2297,21.0122,110.5,");
+        for (int i = 0; i < measurements; i++) {
+            sb.append(",t").append(i).append('=').append(20 + i % 7).append('.').append(i % 10);
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates a threshold rule with two conditions on measurements of the
+     * payload.
+     *
+     * @param id           the config id
+     * @param measurements number of measurements in the payload
+     */
+    public static SentinelConfig thresholdConfig(long id, int measurements) {
+        SentinelConfig config = new SentinelConfig();
+        config.id = id;
+        config.name = "rule " + id;
+        config.userId = "bench";
+        config.organizationId = 1L;
+        config.deviceEui = DEVICE_EUI;
+        config.active = true;
+        config.eventType = SentinelConfig.EVENT_TYPE_DATA;
+        config.hysteresis = 0.5;
+        config.alertLevel = 2;
+        config.alertMessage = "{device.name} alert{info}{measurement} of {device.eui} is {value} ({tag.name})";
+        config.conditionOkMessage = "{device.name} ok{info}{measurement} of {device.eui} is {value}";
+        List<Map<String, Object>> conditions = new ArrayList<>();
+        HashMap<String, Object> condition = new HashMap<>();
+        condition.put("measurement", "t" + (id % measurements));
+        condition.put("condition1", AlarmCondition.CONDITION_GREATER);
+        condition.put("value1", 24.0);
+        conditions.add(condition);
+        condition = new HashMap<>();
+        condition.put("measurement", "t" + ((id + 1) % measurements));
+        condition.put("condition1", AlarmCondition.CONDITION_LESS);
+        condition.put("value1", 10.0);
+        condition.put("condition2", AlarmCondition.CONDITION_GREATER);
+        condition.put("value2", 30.0);
+        condition.put("logic", 1);
+        condition.put("conditionOperator", AlarmCondition.CONDITION_OPERATOR_OR);
+        conditions.add(condition);
+        config.conditions = conditions;
+        return config;
+    }
+
+    /**
+     * Creates a Python rule checking one measurement.
+     */
+    public static SentinelConfig scriptConfig(long id) {
+        SentinelConfig config = thresholdConfig(id, 4);
+        config.useScript = true;
+        config.script = """
+                def checkRule():
+                    v = getValue('t1')
+                    if v is None:
+                        return conditionsNotMet()
+                    if v > 20 + hysteresis:
+                        return conditionsMet('t1', v)
+                    return conditionsNotMet()
+                """;
+        return config;
+    }
+
+    /**
+     * Returns an in-memory SentinelDaoIface answering the config queries used
+     * by RuleIndex. Other methods return default values.
+     *
+     * @param byDevice configs by device EUI
+     * @param byTag    configs by "name:value"
+     * @param byGroup  configs by group EUI
+     */
+    public static SentinelDaoIface fakeSentinelDao(Map<String, List<SentinelConfig>> byDevice,
+            Map<String, List<SentinelConfig>> byTag, Map<String, List<SentinelConfig>> byGroup) {
+        return (SentinelDaoIface) Proxy.newProxyInstance(SentinelDaoIface.class.getClassLoader(),
+                new Class<?>[] { SentinelDaoIface.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getConfigsByDevice":
+                            return byDevice.getOrDefault((String) args[0], List.of());
+                        case "getConfigsByTag":
+                            return byTag.getOrDefault(args[0] + ":" + args[1], List.of());
+                        case "getConfigsByGroup":
+                            return byGroup.getOrDefault((String) args[0], List.of());
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == double.class) {
+            return 0.0;
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.signomix.sentinel.domain;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.signomix.common.iot.sentinel.SentinelConfig;
+
+/**
+ * Threshold rules of one device checked against one frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CheckConditionsBenchmark {
+
+    @Param({ "1", "10", "100" })
+    int configsPerDevice;
+
+    private static final int MEASUREMENTS = 24;
+
+    private DataEventLogic logic;
+    private SentinelConfig[] configs;
+    private DataFrame frame;
+
+    @Setup
+    public void setup() {
+        BenchmarkData.quietLogging();
+        logic = new DataEventLogic();
+        logic.logger = BenchmarkData.logger(DataEventLogic.class);
+        logic.ruleIndex = new RuleIndex();
+        configs = new SentinelConfig[configsPerDevice];
+        for (int i = 0; i < configs.length; i++) {
+            configs[i] = BenchmarkData.thresholdConfig(i + 1, MEASUREMENTS);
+        }
+        frame = DataFrame.parse(BenchmarkData.payload(BenchmarkData.DEVICE_EUI, MEASUREMENTS));
+    }
+
+    @Benchmark
+    public void checkConditions(Blackhole bh) {
+        for (int i = 0; i < configs.length; i++) {
+            bh.consume(logic.checkConditions(configs[i], frame, 0));
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.signomix.sentinel.domain;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.signomix.common.iot.sentinel.SentinelConfig;
+
+/**
+ * Rendering of alert subject and body. The replaceAll case repeats the
+ * regex based transformation used before message templates, as a baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageTemplateBenchmark {
+
+    private DataEventLogic logic;
+    private SentinelConfig config;
+    private ConditionResult result;
+
+    @Setup
+    public void setup() {
+        BenchmarkData.quietLogging();
+        logic = new DataEventLogic();
+        logic.logger = BenchmarkData.logger(DataEventLogic.class);
+        logic.messageTemplates = new MessageTemplates();
+        config = BenchmarkData.thresholdConfig(1, 4);
+        config.tagName = "room";
+        config.tagValue = "101";
+        result = new ConditionResult();
+        result.measurement = "t1";
+        result.value = 25.5;
+        result.eui = BenchmarkData.DEVICE_EUI;
+    }
+
+    @Benchmark
+    public void template(Blackhole bh) {
+        MessageTemplates.Message template = logic.messageTemplates.getAlertMessage(config);
+        String[] values = logic.getMessageValues(config, null, null, result);
+        bh.consume(logic.renderMessage(template.subject(), values));
+        bh.consume(logic.renderMessage(template.body(), values));
+    }
+
+    @Benchmark
+    public void replaceAll(Blackhole bh) {
+        String message = config.alertMessage;
+        int idx = message.indexOf("{info}");
+        bh.consume(replaceAll(idx < 0 ? "" : message.substring(0, idx)));
+        bh.consume(replaceAll(idx < 0 ? message : message.substring(idx + 6)));
+    }
+
+    private String replaceAll(String message) {
+        String text = message;
+        text = text.replaceAll("\\{target.eui\\}", config.deviceEui);
+        text = text.replaceAll("\\{target.name\\}", "");
+        text = text.replaceAll("\\{tag.name\\}", config.tagName);
+        text = text.replaceAll("\\{tag.value\\}", config.tagValue);
+        text = text.replaceAll("\\{device.eui\\}", result.eui);
+        text = text.replaceAll("\\{device.name\\}", "");
+        text = text.replaceAll("\\{measurement\\}", result.measurement);
+        text = text.replaceAll("\\{var\\}", result.measurement);
+        text = text.replaceAll("\\{value\\}", result.value.toString());
+        return text;
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.signomix.sentinel.domain;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.signomix.common.iot.sentinel.SentinelConfig;
+
+/**
+ * Python rule evaluation. The warm case reuses pooled interpreters and
+ * compiled code, the cold case starts with a new engine on every call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PythonScriptBenchmark {
+
+    private DataEventLogic logic;
+    private SentinelConfig config;
+    private DataFrame frame;
+
+    @Setup
+    public void setup() {
+        BenchmarkData.quietLogging();
+        logic = new DataEventLogic();
+        logic.logger = BenchmarkData.logger(DataEventLogic.class);
+        logic.pythonEngine = newEngine();
+        config = BenchmarkData.scriptConfig(1);
+        frame = DataFrame.parse(BenchmarkData.payload(BenchmarkData.DEVICE_EUI, 4));
+    }
+
+    @TearDown
+    public void tearDown() {
+        logic.pythonEngine.onStop(null);
+    }
+
+    @Benchmark
+    public ConditionResult warm() {
+        return logic.runPythonScript(config, frame, 0);
+    }
+
+    @Benchmark
+    public ConditionResult cold() {
+        PythonEngine warmEngine = logic.pythonEngine;
+        logic.pythonEngine = newEngine();
+        try {
+            return logic.runPythonScript(config, frame, 0);
+        } finally {
+            logic.pythonEngine.onStop(null);
+            logic.pythonEngine = warmEngine;
+        }
+    }
+
+    private static PythonEngine newEngine() {
+        PythonEngine engine = new PythonEngine();
+        engine.logger = BenchmarkData.logger(PythonEngine.class);
+        engine.poolSize = 1;
+        engine.onStart(null);
+        return engine;
+    }
+
+}
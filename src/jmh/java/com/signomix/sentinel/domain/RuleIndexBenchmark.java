@@ -0,0 +1,84 @@
+package com.signomix.sentinel.domain;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.signomix.common.iot.sentinel.SentinelConfig;
+
+/**
+ * Rule lookup for a device attached to rules by EUI, tag and groups, backed by
+ * an in-memory SentinelDaoIface. The cached case reads loaded buckets, the
+ * load case clears the index before every lookup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RuleIndexBenchmark {
+
+    @Param({ "1", "10", "100" })
+    int configsPerSelector;
+
+    private static final String TAG = "room";
+    private static final String TAG_VALUE = "101";
+    private static final String[] GROUPS = { "G1", "G2" };
+
+    private RuleIndex ruleIndex;
+
+    @Setup
+    public void setup() {
+        BenchmarkData.quietLogging();
+        Map<String, List<SentinelConfig>> byDevice = new HashMap<>();
+        Map<String, List<SentinelConfig>> byTag = new HashMap<>();
+        Map<String, List<SentinelConfig>> byGroup = new HashMap<>();
+        long id = 1;
+        byDevice.put(BenchmarkData.DEVICE_EUI, configs(id, configsPerSelector));
+        id += configsPerSelector;
+        byTag.put(TAG + ":" + TAG_VALUE, configs(id, configsPerSelector));
+        id += configsPerSelector;
+        for (String group : GROUPS) {
+            byGroup.put(group, configs(id, configsPerSelector));
+            id += configsPerSelector;
+        }
+        ruleIndex = new RuleIndex();
+        ruleIndex.logger = BenchmarkData.logger(RuleIndex.class);
+        ruleIndex.sentinelDao = BenchmarkData.fakeSentinelDao(byDevice, byTag, byGroup);
+    }
+
+    @Benchmark
+    public HashMap<Long, SentinelConfig> cached() {
+        return ruleIndex.getConfigs(EventLogic.EVENT_TYPE_DATA, BenchmarkData.DEVICE_EUI, TAG, TAG_VALUE, GROUPS);
+    }
+
+    @Benchmark
+    public HashMap<Long, SentinelConfig> load() {
+        ruleIndex.clear();
+        return ruleIndex.getConfigs(EventLogic.EVENT_TYPE_DATA, BenchmarkData.DEVICE_EUI, TAG, TAG_VALUE, GROUPS);
+    }
+
+    private static List<SentinelConfig> configs(long firstId, int count) {
+        ArrayList<SentinelConfig> configs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            configs.add(BenchmarkData.thresholdConfig(firstId + i, 24));
+        }
+        return configs;
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.signomix.sentinel.port.in;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.signomix.sentinel.domain.BenchmarkData;
+import com.signomix.sentinel.domain.DataEventLogic;
+import com.signomix.sentinel.domain.DataFrame;
+import com.signomix.sentinel.domain.SentinelMetrics;
+import com.signomix.sentinel.domain.ShardFilter;
+
+/**
+ * Parsing of data-received payloads. The receive case runs the port with a
+ * DataEventLogic that ignores the parsed frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataEventReceivedPortBenchmark {
+
+    @Param({ "4", "24" })
+    int measurements;
+
+    private DataEventReceivedPort port;
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        BenchmarkData.quietLogging();
+        port = new DataEventReceivedPort();
+        port.logger = Logger.getLogger(DataEventReceivedPort.class);
+        // not started, so recording is a no-op
+        port.metrics = new SentinelMetrics();
+        port.shardFilter = new ShardFilter();
+        port.dataEventLogic = new DataEventLogic() {
+            @Override
+            public void handleEvent(int type, DataFrame frame, String messageId) {
+            }
+
+            @Override
+            public void handleEvent(int type, String eui, String commandString, String messageId) {
+            }
+        };
+        payload = BenchmarkData.payload(BenchmarkData.DEVICE_EUI, measurements);
+    }
+
+    @Benchmark
+    public DataFrame parse() {
+        return DataFrame.parse(payload);
+    }
+
+    @Benchmark
+    public void receive() {
+        port.receive(payload, "bench");
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.signomix.sentinel.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.mqtt.MqttEndpoint;
+import io.vertx.mqtt.MqttServer;
+import io.vertx.mqtt.MqttServerOptions;
+import io.vertx.mqtt.MqttTopicSubscription;
+
+/**
+ * Minimal in-process MQTT broker for load tests.
+ * Publishes are relayed to subscribers of matching topic filters ('+' and
+ * '#' wildcards) with the lower of the publish and subscription QoS (max 1).
+ * Sessions, retained messages and wills are not supported.
+ */
+public class EmbeddedBroker {
+
+    private final Vertx vertx;
+    private final String host;
+    private final int port;
+    private MqttServer server;
+
+    // topic filters and granted QoS by endpoint
+    private final Map<MqttEndpoint, Map<String, MqttQoS>> subscriptions = new ConcurrentHashMap<>();
+
+    public EmbeddedBroker(Vertx vertx, String host, int port) {
+        this.vertx = vertx;
+        this.host = host;
+        this.port = port;
+    }
+
+    public void start() throws Exception {
+        server = MqttServer.create(vertx, new MqttServerOptions().setHost(host).setPort(port));
+        server.endpointHandler(this::onConnect);
+        server.listen().toCompletionStage().toCompletableFuture().get();
+        System.out.println("Embedded MQTT broker listening on " + host + ":" + server.actualPort());
+    }
+
+    public void stop() throws Exception {
+        if (server != null) {
+            server.close().toCompletionStage().toCompletableFuture().get();
+        }
+    }
+
+    private void onConnect(MqttEndpoint endpoint) {
+        Map<String, MqttQoS> topics = new ConcurrentHashMap<>();
+        subscriptions.put(endpoint, topics);
+        endpoint.subscribeHandler(subscribe -> {
+            List<MqttQoS> granted = new ArrayList<>();
+            for (MqttTopicSubscription subscription : subscribe.topicSubscriptions()) {
+                MqttQoS qos = subscription.qualityOfService() == MqttQoS.EXACTLY_ONCE ? MqttQoS.AT_LEAST_ONCE
+                        : subscription.qualityOfService();
+                topics.put(subscription.topicName(), qos);
+                granted.add(qos);
+            }
+            endpoint.subscribeAcknowledge(subscribe.messageId(), granted);
+        });
+        endpoint.unsubscribeHandler(unsubscribe -> {
+            for (String topic : unsubscribe.topics()) {
+                topics.remove(topic);
+            }
+            endpoint.unsubscribeAcknowledge(unsubscribe.messageId());
+        });
+        endpoint.publishHandler(message -> {
+            if (message.qosLevel() == MqttQoS.AT_LEAST_ONCE) {
+                endpoint.publishAcknowledge(message.messageId());
+            } else if (message.qosLevel() == MqttQoS.EXACTLY_ONCE) {
+                endpoint.publishReceived(message.messageId());
+            }
+            relay(message.topicName(), message.payload(), message.qosLevel());
+        });
+        endpoint.publishReleaseHandler(endpoint::publishComplete);
+        endpoint.disconnectHandler(v -> subscriptions.remove(endpoint));
+        endpoint.closeHandler(v -> subscriptions.remove(endpoint));
+        endpoint.accept(false);
+    }
+
+    private void relay(String topic, Buffer payload, MqttQoS qos) {
+        for (Map.Entry<MqttEndpoint, Map<String, MqttQoS>> entry : subscriptions.entrySet()) {
+            for (Map.Entry<String, MqttQoS> subscription : entry.getValue().entrySet()) {
+                if (matches(subscription.getKey(), topic)) {
+                    MqttQoS granted = subscription.getValue().value() < qos.value() ? subscription.getValue()
+                            : qos;
+                    if (granted == MqttQoS.EXACTLY_ONCE) {
+                        granted = MqttQoS.AT_LEAST_ONCE;
+                    }
+                    MqttEndpoint endpoint = entry.getKey();
+                    if (endpoint.isConnected()) {
+                        endpoint.publish(topic, payload, granted, false, false);
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    static boolean matches(String filter, String topic) {
+        String[] filterLevels = filter.split("/", -1);
+        String[] topicLevels = topic.split("/", -1);
+        for (int i = 0; i < filterLevels.length; i++) {
+            if (filterLevels[i].equals("#")) {
+                return true;
+            }
+            if (i >= topicLevels.length) {
+                return false;
+            }
+            if (!filterLevels[i].equals("+") && !filterLevels[i].equals(topicLevels[i])) {
+                return false;
+            }
+        }
+        return filterLevels.length == topicLevels.length;
+    }
+
+    /**
+     * Runs the broker until the process is stopped.
+     * Arguments: [host] [port]
+     */
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "0.0.0.0";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 1883;
+        Vertx vertx = Vertx.vertx();
+        new EmbeddedBroker(vertx, host, port).start();
+        Thread.currentThread().join();
+    }
+
+}
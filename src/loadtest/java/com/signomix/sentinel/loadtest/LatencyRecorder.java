@@ -0,0 +1,53 @@
+package com.signomix.sentinel.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records latency samples (nanoseconds) up to a fixed capacity and reports
+ * percentiles. Samples above the capacity are counted but not stored.
+ */
+public class LatencyRecorder {
+
+    private final long[] samples;
+    private final AtomicInteger count = new AtomicInteger();
+
+    public LatencyRecorder(int capacity) {
+        samples = new long[capacity];
+    }
+
+    public void record(long nanos) {
+        int index = count.getAndIncrement();
+        if (index < samples.length) {
+            samples[index] = nanos;
+        }
+    }
+
+    public int getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return p50, p99, p999 and max in milliseconds, or null if there are no
+     *         samples
+     */
+    public double[] percentiles() {
+        int size = Math.min(count.get(), samples.length);
+        if (size == 0) {
+            return null;
+        }
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        return new double[] {
+                at(sorted, 0.5),
+                at(sorted, 0.99),
+                at(sorted, 0.999),
+                sorted[size - 1] / 1e6 };
+    }
+
+    private static double at(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+}
@@ -0,0 +1,211 @@
+package com.signomix.sentinel.loadtest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.mqtt.MqttClient;
+import io.vertx.mqtt.MqttClientOptions;
+
+/**
+ * Load generator for a running sentinel service.
+ * Publishes data-received frames of a synthetic device fleet at a fixed rate
+ * and measures the latency from publishing a frame to receiving the alert it
+ * triggers on signomix/alerts.
+ * <p>
+ * Every device sends the measurement "seq" alternating between a positive
+ * and a negative frame number (+1, -1, +2, -2, ...). A rule attached to the
+ * fleet with the condition seq &gt; 0 and {value} in the alert message (see
+ * doc/loadtest-rule.json) raises an alert for every positive frame; the
+ * value in the alert identifies the frame. Devices and the rule must exist in
+ * the database used by the service.
+ * <p>
+ * Options (--name=value): host, port, embedded-broker (true/false), devices,
+ * prefix, rate (frames/s), duration (s), warmup (s), measurements (extra
+ * measurements per frame), report (s), samples (max stored latencies).
+ */
+public class LoadTest {
+
+    static final String DATA_TOPIC = "signomix/events/data-received";
+    static final String ALERTS_TOPIC = "signomix/alerts";
+
+    private final Map<String, String> options;
+    private final String prefix;
+    private final int devices;
+    private final int measurements;
+
+    // publish time by device EUI + "#" + frame number
+    private final ConcurrentHashMap<String, Long> pending = new ConcurrentHashMap<>();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong alerts = new AtomicLong();
+    private final AtomicLong unmatched = new AtomicLong();
+    private volatile LatencyRecorder recorder;
+
+    LoadTest(Map<String, String> options) {
+        this.options = options;
+        this.prefix = option("prefix", "LOAD-");
+        this.devices = Integer.parseInt(option("devices", "100"));
+        this.measurements = Integer.parseInt(option("measurements", "4"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        new LoadTest(options).run();
+        System.exit(0);
+    }
+
+    void run() throws Exception {
+        String host = option("host", "localhost");
+        int port = Integer.parseInt(option("port", "1883"));
+        double rate = Double.parseDouble(option("rate", "1000"));
+        long duration = Long.parseLong(option("duration", "60"));
+        long warmup = Long.parseLong(option("warmup", "10"));
+        long reportInterval = Long.parseLong(option("report", "5"));
+        int capacity = Integer.parseInt(option("samples", "2000000"));
+
+        Vertx vertx = Vertx.vertx();
+        EmbeddedBroker broker = null;
+        if (Boolean.parseBoolean(option("embedded-broker", "false"))) {
+            broker = new EmbeddedBroker(vertx, host, port);
+            broker.start();
+        }
+
+        MqttClient subscriber = MqttClient.create(vertx, new MqttClientOptions()
+                .setClientId("sentinel-loadtest-alerts").setMaxMessageSize(-1));
+        subscriber.publishHandler(message -> onAlert(message.payload().toString(StandardCharsets.UTF_8)));
+        subscriber.connect(port, host).toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        subscriber.subscribe(ALERTS_TOPIC, MqttQoS.AT_MOST_ONCE.value()).toCompletionStage()
+                .toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+        MqttClient publisher = MqttClient.create(vertx, new MqttClientOptions()
+                .setClientId("sentinel-loadtest-devices").setMaxInflightQueue(Integer.MAX_VALUE));
+        publisher.connect(port, host).toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        Context context = vertx.getOrCreateContext();
+
+        System.out.println("Load test: " + devices + " devices, " + rate + " frames/s, " + warmup + " s warmup, "
+                + duration + " s measurement");
+        recorder = new LatencyRecorder(capacity);
+        long intervalNanos = (long) (1e9 / rate);
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmup);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(duration);
+        long nextReport = start + TimeUnit.SECONDS.toNanos(reportInterval);
+        boolean measuring = warmup == 0;
+        long[] frames = new long[devices];
+        long frame = 0;
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            long due = start + frame * intervalNanos;
+            if (due > now) {
+                LockSupport.parkNanos(due - now);
+            }
+            if (!measuring && System.nanoTime() >= measureFrom) {
+                // start measuring with a clean state
+                recorder = new LatencyRecorder(capacity);
+                alerts.set(0);
+                unmatched.set(0);
+                sent.set(0);
+                measuring = true;
+                System.out.println("Warmup finished");
+            }
+            int device = (int) (frame % devices);
+            long number = frames[device]++;
+            String eui = prefix + device;
+            // +1, -1, +2, -2, ...
+            long seq = number % 2 == 0 ? number / 2 + 1 : -(number / 2 + 1);
+            Buffer payload = Buffer.buffer(payload(eui, seq));
+            if (seq > 0) {
+                pending.put(eui + "#" + seq, System.nanoTime());
+            }
+            context.runOnContext(v -> publisher.publish(DATA_TOPIC, payload, MqttQoS.AT_MOST_ONCE, false, false));
+            sent.incrementAndGet();
+            frame++;
+            if (System.nanoTime() >= nextReport) {
+                report(measuring ? "measurement" : "warmup");
+                nextReport += TimeUnit.SECONDS.toNanos(reportInterval);
+            }
+        }
+        // wait for late alerts
+        Thread.sleep(TimeUnit.SECONDS.toMillis(Math.max(1, reportInterval)));
+        report("final");
+        System.out.println("Frames without alert: " + pending.size());
+
+        publisher.disconnect();
+        subscriber.disconnect();
+        if (broker != null) {
+            broker.stop();
+        }
+        vertx.close();
+    }
+
+    String payload(String eui, long seq) {
+        // 9 header fields: EUI, organization ID, name, status, alert status,
+        // latitude, longitude, altitude, reserved
+        StringBuilder sb = new StringBuilder(64 + measurements * 12);
+        sb.append(eui).append(",1,").append(eui).append(",1,0,0,0,0,");
+        sb.append(",seq=").append(seq);
+        for (int i = 0; i < measurements; i++) {
+            sb.append(",m").append(i).append('=').append(i);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Matches the alert (userId, deviceEui, alertType, message, subject
+     * separated by tabs) with the frame that triggered it.
+     */
+    void onAlert(String alert) {
+        long received = System.nanoTime();
+        String[] fields = alert.split("\t", -1);
+        if (fields.length < 4 || !fields[1].startsWith(prefix)) {
+            return;
+        }
+        alerts.incrementAndGet();
+        for (String token : fields[3].split("[^0-9.\\-]+")) {
+            long seq;
+            try {
+                double value = Double.parseDouble(token);
+                seq = (long) value;
+                if (value != seq || seq <= 0) {
+                    continue;
+                }
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            Long published = pending.remove(fields[1] + "#" + seq);
+            if (published != null) {
+                recorder.record(received - published);
+                return;
+            }
+        }
+        // alert for another recipient of the same frame, or not related to a
+        // pending frame
+        unmatched.incrementAndGet();
+    }
+
+    void report(String phase) {
+        double[] p = recorder.percentiles();
+        String latency = p == null ? "no samples"
+                : String.format("p50=%.2f ms p99=%.2f ms p999=%.2f ms max=%.2f ms", p[0], p[1], p[2], p[3]);
+        System.out.println(phase + ": sent=" + sent.get() + " alerts=" + alerts.get() + " matched="
+                + recorder.getCount() + " unmatched=" + unmatched.get() + " " + latency);
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+}
@@ -0,0 +1,202 @@
+package com.signomix.sentinel.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Database fixture for load tests.
+ * Creates the tables of loadtest-schema.sql when they do not exist and
+ * writes the device fleet used by LoadTest, the rule of
+ * doc/loadtest-rule.json and the sentinel-device mappings of the fleet, so
+ * the service can run against an empty PostgreSQL database. Rows of a
+ * previous run (devices with the prefix, rules named like the rule, their
+ * events, signals and alerts) are removed first.
+ * <p>
+ * Options (--name=value): db-url, db-user, db-password (default to
+ * POSTGRES_URL, POSTGRES_USER and POSTGRES_PASSWORD), schema (true/false),
+ * devices, prefix, measurements (as given to LoadTest), user (owner of the
+ * devices and the rule), rule (path of the rule file).
+ */
+public class LoadTestDatabase {
+
+    private final Map<String, String> options;
+
+    LoadTestDatabase(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        new LoadTestDatabase(options).run();
+    }
+
+    void run() throws Exception {
+        String url = option("db-url", System.getenv().getOrDefault("POSTGRES_URL",
+                "jdbc:postgresql://localhost:5432/signomix"));
+        int devices = Integer.parseInt(option("devices", "100"));
+        String prefix = option("prefix", "LOAD-");
+        String userId = option("user", "loadtest");
+        JsonNode rule = new ObjectMapper().readTree(Path.of(option("rule", "doc/loadtest-rule.json")).toFile());
+
+        try (Connection conn = DriverManager.getConnection(url,
+                option("db-user", System.getenv().getOrDefault("POSTGRES_USER", "postgres")),
+                option("db-password", System.getenv().getOrDefault("POSTGRES_PASSWORD", "postgres")))) {
+            if (Boolean.parseBoolean(option("schema", "true"))) {
+                createSchema(conn);
+            }
+            conn.setAutoCommit(false);
+            clear(conn, prefix, rule.path("name").asText());
+            insertDevices(conn, prefix, devices, userId, rule);
+            long ruleId = insertRule(conn, rule, userId);
+            insertMappings(conn, ruleId, prefix, devices);
+            conn.commit();
+            System.out.println("Load test database: " + devices + " devices, rule " + ruleId + " owned by "
+                    + userId);
+        }
+    }
+
+    private void createSchema(Connection conn) throws IOException, SQLException {
+        String script;
+        try (InputStream in = LoadTestDatabase.class.getResourceAsStream("/loadtest-schema.sql")) {
+            script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : script.replaceAll("(?m)^--.*$", "").split(";")) {
+                if (!sql.isBlank()) {
+                    stmt.execute(sql);
+                }
+            }
+        }
+    }
+
+    private void clear(Connection conn, String prefix, String ruleName) throws SQLException {
+        String pattern = prefix + "%";
+        execute(conn, "DELETE FROM sentinel_devices WHERE eui LIKE ?", pattern);
+        execute(conn, "DELETE FROM sentinel_events WHERE eui LIKE ?", pattern);
+        execute(conn, "DELETE FROM signals WHERE device_eui LIKE ?", pattern);
+        execute(conn, "DELETE FROM alerts WHERE deviceeui LIKE ?", pattern);
+        execute(conn, "DELETE FROM devices WHERE eui LIKE ?", pattern);
+        execute(conn, "DELETE FROM sentinel_setup WHERE name=?", ruleName);
+    }
+
+    private void insertDevices(Connection conn, String prefix, int devices, String userId, JsonNode rule)
+            throws SQLException {
+        String sql = "INSERT INTO devices (eui,name,userid,type,channels,tags,active,organization) "
+                + "VALUES (?,?,?,'GENERIC',?,?,TRUE,1)";
+        String tags = rule.path("tagName").asText() + ":" + rule.path("tagValue").asText();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < devices; i++) {
+                pstmt.setString(1, prefix + i);
+                pstmt.setString(2, prefix + i);
+                pstmt.setString(3, userId);
+                pstmt.setString(4, channels());
+                pstmt.setString(5, tags);
+                pstmt.addBatch();
+                if (i % 1000 == 999) {
+                    pstmt.executeBatch();
+                }
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private long insertRule(Connection conn, JsonNode rule, String userId) throws SQLException {
+        String sql = "INSERT INTO sentinel_setup (name,active,user_id,organization_id,device_eui,group_eui,"
+                + "tag_name,tag_value,alert_level,alert_message,alert_ok,alert_ok_message,conditions,team,"
+                + "administrators,every_time,hysteresis,use_script,script,event_type) "
+                + "VALUES (?,?,?,1,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, new String[] { "id" })) {
+            pstmt.setString(1, rule.path("name").asText());
+            pstmt.setBoolean(2, rule.path("active").asBoolean());
+            pstmt.setString(3, userId);
+            pstmt.setString(4, rule.path("deviceEui").asText());
+            pstmt.setString(5, rule.path("groupEui").asText());
+            pstmt.setString(6, rule.path("tagName").asText());
+            pstmt.setString(7, rule.path("tagValue").asText());
+            pstmt.setInt(8, rule.path("alertLevel").asInt());
+            pstmt.setString(9, rule.path("alertMessage").asText());
+            pstmt.setBoolean(10, rule.path("conditionOk").asBoolean());
+            pstmt.setString(11, rule.path("conditionOkMessage").asText());
+            pstmt.setString(12, rule.path("conditions").toString());
+            pstmt.setString(13, rule.path("team").asText());
+            pstmt.setString(14, rule.path("administrators").asText());
+            pstmt.setBoolean(15, rule.path("everyTime").asBoolean());
+            pstmt.setDouble(16, rule.path("hysteresis").asDouble());
+            pstmt.setBoolean(17, rule.path("useScript").asBoolean());
+            pstmt.setString(18, rule.path("script").asText());
+            pstmt.setInt(19, rule.path("eventType").asInt());
+            pstmt.executeUpdate();
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                keys.next();
+                return keys.getLong(1);
+            }
+        }
+    }
+
+    private void insertMappings(Connection conn, long ruleId, String prefix, int devices) throws SQLException {
+        String channelMapping = channelMapping();
+        try (PreparedStatement pstmt = conn
+                .prepareStatement("INSERT INTO sentinel_devices (sentinel_id,eui,channels) VALUES (?,?,?)")) {
+            for (int i = 0; i < devices; i++) {
+                pstmt.setLong(1, ruleId);
+                pstmt.setString(2, prefix + i);
+                pstmt.setString(3, channelMapping);
+                pstmt.addBatch();
+                if (i % 1000 == 999) {
+                    pstmt.executeBatch();
+                }
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    // channels of the frames sent by LoadTest: seq and the extra measurements
+    private String channels() {
+        int measurements = Integer.parseInt(option("measurements", "4"));
+        StringBuilder sb = new StringBuilder("seq");
+        for (int i = 0; i < measurements; i++) {
+            sb.append(",m").append(i);
+        }
+        return sb.toString();
+    }
+
+    // same format as SentinelLogic.getChannelMapping()
+    private String channelMapping() {
+        String[] channels = channels().split(",");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < channels.length; i++) {
+            sb.append(channels[i]).append(":d").append(i + 1).append(';');
+        }
+        return sb.toString();
+    }
+
+    private static void execute(Connection conn, String sql, String parameter) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, parameter);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+}
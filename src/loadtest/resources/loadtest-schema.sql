@@ -0,0 +1,84 @@
+-- Stand-in for the tables read and written on the sentinel load path, for a
+-- disposable PostgreSQL database. Column names follow the signomix-common
+-- structure; only columns used by the service are created. Existing tables
+-- are left as they are. Indexes of the signals table are in
+-- doc/signals-indexes.sql.
+
+CREATE TABLE IF NOT EXISTS devices (
+    eui VARCHAR(255) PRIMARY KEY,
+    name VARCHAR(255),
+    userid VARCHAR(255),
+    type VARCHAR(255),
+    team VARCHAR(1000) DEFAULT '',
+    administrators VARCHAR(1000) DEFAULT '',
+    channels VARCHAR(1000) DEFAULT '',
+    groups VARCHAR(1000) DEFAULT '',
+    tags VARCHAR(1000) DEFAULT '',
+    active BOOLEAN DEFAULT TRUE,
+    organization BIGINT DEFAULT 1,
+    configuration VARCHAR(1000) DEFAULT ''
+);
+
+CREATE TABLE IF NOT EXISTS sentinel_setup (
+    id BIGSERIAL PRIMARY KEY,
+    name VARCHAR(255),
+    active BOOLEAN,
+    user_id VARCHAR(255),
+    organization_id BIGINT,
+    device_eui VARCHAR(255),
+    group_eui VARCHAR(255),
+    tag_name VARCHAR(255),
+    tag_value VARCHAR(255),
+    alert_level INTEGER,
+    alert_message VARCHAR(1000),
+    alert_ok BOOLEAN,
+    alert_ok_message VARCHAR(1000),
+    conditions VARCHAR(8000),
+    team VARCHAR(1000),
+    administrators VARCHAR(1000),
+    every_time BOOLEAN,
+    hysteresis DOUBLE PRECISION,
+    use_script BOOLEAN,
+    script VARCHAR(8000),
+    event_type INTEGER
+);
+
+CREATE TABLE IF NOT EXISTS sentinel_devices (
+    sentinel_id BIGINT,
+    eui VARCHAR(255),
+    channels VARCHAR(1000)
+);
+CREATE INDEX IF NOT EXISTS sentinel_devices_eui_idx ON sentinel_devices (eui);
+
+CREATE TABLE IF NOT EXISTS sentinel_events (
+    id BIGSERIAL PRIMARY KEY,
+    sentinel_id BIGINT,
+    eui VARCHAR(255),
+    level INTEGER,
+    message_pl VARCHAR(1000),
+    message_en VARCHAR(1000),
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS signals (
+    id BIGSERIAL PRIMARY KEY,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    user_id VARCHAR(255),
+    organization_id BIGINT,
+    sentinel_config_id BIGINT,
+    device_eui VARCHAR(255),
+    level INTEGER,
+    subject_en VARCHAR(255),
+    subject_pl VARCHAR(255),
+    message_en VARCHAR(1000),
+    message_pl VARCHAR(1000)
+);
+
+CREATE TABLE IF NOT EXISTS alerts (
+    id BIGSERIAL PRIMARY KEY,
+    type VARCHAR(255),
+    deviceeui VARCHAR(255),
+    userid VARCHAR(255),
+    payload VARCHAR(1000),
+    createdat BIGINT
+);
@@ -8,7 +8,10 @@ import org.jboss.logging.Logger;
 import com.signomix.sentinel.port.in.CommandEventReceivedPort;
 import com.signomix.sentinel.port.in.DataEventReceivedPort;
 import com.signomix.sentinel.port.in.DeviceEventPort;
+import com.signomix.sentinel.port.in.SentinelPort;
+import com.signomix.sentinel.port.in.SignalPort;
 
+import io.smallrye.reactive.messaging.annotations.Blocking;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 
@@ -27,7 +30,14 @@ public class MqttClient {
     @Inject
     DeviceEventPort deviceEventPort;
 
+    @Inject
+    SentinelPort sentinelPort;
+
+    @Inject
+    SignalPort signalPort;
+
     @Incoming("command-created")
+    @Blocking
     public void receiveCommand(byte[] command) {
         try {
             String messageId = System.currentTimeMillis() + "-" + ThreadLocalRandom.current().nextInt();
@@ -38,6 +48,7 @@ public class MqttClient {
     }
 
     @Incoming("data-received")
+    @Blocking
     public void receive(byte[] eui) {
         try {
             String messageId = System.currentTimeMillis() + "-" + ThreadLocalRandom.current().nextInt();
@@ -78,6 +89,25 @@ public class MqttClient {
         }
     }
 
+    @Incoming("sentinel-changes")
+    @Blocking
+    public void sentinelChanged(byte[] id) {
+        try {
+            sentinelPort.configChanged(id);
+        } catch (Exception e) {
+            logger.error("Error processing sentinel change: " + e.getMessage());
+        }
+    }
+
+    @Incoming("signals-created")
+    public void signalCreated(byte[] signal) {
+        try {
+            signalPort.signalCreated(signal);
+        } catch (Exception e) {
+            logger.error("Error processing signal: " + e.getMessage());
+        }
+    }
+
     /*
      * @Incoming("device-control")
      * public void deviceControl(byte[] groupEui) {
@@ -1,14 +1,20 @@
 package com.signomix.sentinel.adapter.in;
 
 import java.util.List;
+import java.util.Map;
 
 import org.jboss.logging.Logger;
+import org.jboss.resteasy.reactive.RestStreamElementType;
+import org.jboss.resteasy.reactive.common.util.RestMediaType;
 
 import com.signomix.common.User;
 import com.signomix.common.iot.sentinel.SentinelConfig;
+import com.signomix.sentinel.domain.RuleBudget;
 import com.signomix.sentinel.port.in.AuthPort;
 import com.signomix.sentinel.port.in.SentinelPort;
 
+import io.smallrye.common.annotation.Blocking;
+import io.smallrye.mutiny.Multi;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.DELETE;
@@ -18,7 +24,10 @@ import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
 @ApplicationScoped
@@ -106,4 +115,62 @@ public class SentinelRestApi {
         return Response.ok().build();
     }
 
+    @GET
+    @Path("/quarantine")
+    public Response getQuarantinedConfigs(@HeaderParam("Authentication") String token) {
+        logger.info("getQuarantinedConfigs");
+        User user = authPort.getUser(token);
+        if (user == null) {
+            return Response.status(Response.Status.UNAUTHORIZED).build();
+        }
+        if (!sentinelPort.isAdmin(user)) {
+            return Response.status(Response.Status.FORBIDDEN).build();
+        }
+        List<RuleBudget.Quarantine> quarantined = sentinelPort.getQuarantinedConfigs();
+        return Response.ok().entity(quarantined).build();
+    }
+
+    @DELETE
+    @Path("/quarantine/{id}")
+    public Response releaseQuarantinedConfig(@HeaderParam("Authentication") String token,
+            @PathParam("id") long id) {
+        logger.info("releaseQuarantinedConfig: " + id);
+        User user = authPort.getUser(token);
+        if (user == null) {
+            return Response.status(Response.Status.UNAUTHORIZED).build();
+        }
+        if (!sentinelPort.isAdmin(user)) {
+            return Response.status(Response.Status.FORBIDDEN).build();
+        }
+        if (!sentinelPort.releaseQuarantinedConfig(id)) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return Response.ok().build();
+    }
+
+    /**
+     * Streams all events of the sentinel config as NDJSON, one event per line.
+     * Responses are gzip-compressed when the client sends Accept-Encoding: gzip.
+     */
+    @GET
+    @Path("/{id}/events")
+    @Blocking
+    @Produces(RestMediaType.APPLICATION_NDJSON)
+    @RestStreamElementType(MediaType.APPLICATION_JSON)
+    public Multi<Map<String, Object>> exportSentinelEvents(@HeaderParam("Authentication") String token,
+            @PathParam("id") long id) {
+        User user = authPort.getUser(token);
+        if (user == null) {
+            throw new WebApplicationException(Response.Status.UNAUTHORIZED);
+        }
+        SentinelConfig config = sentinelPort.getConfig(user, id);
+        if (config == null) {
+            throw new WebApplicationException(Response.Status.NOT_FOUND);
+        }
+        if (!sentinelPort.canAccess(user, config)) {
+            throw new WebApplicationException(Response.Status.FORBIDDEN);
+        }
+        return sentinelPort.exportEvents(id);
+    }
+
 }
@@ -1,14 +1,24 @@
 package com.signomix.sentinel.adapter.in;
 
+import java.sql.SQLException;
+import java.time.Duration;
 import java.util.List;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
+import org.jboss.resteasy.reactive.RestStreamElementType;
+import org.jboss.resteasy.reactive.common.util.RestMediaType;
 
 import com.signomix.common.User;
 import com.signomix.common.iot.sentinel.Signal;
+import com.signomix.sentinel.domain.RetentionLogic;
+import com.signomix.sentinel.domain.SignalPage;
+import com.signomix.sentinel.domain.SignalStream;
 import com.signomix.sentinel.port.in.AuthPort;
 import com.signomix.sentinel.port.in.SignalPort;
 
+import io.smallrye.common.annotation.Blocking;
+import io.smallrye.mutiny.Multi;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.DELETE;
@@ -16,8 +26,14 @@ import jakarta.ws.rs.GET;
 import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
 
 @ApplicationScoped
 @Path("/api/signal")
@@ -32,6 +48,9 @@ public class SignalRestApi {
     @Inject
     AuthPort authPort;
 
+    @ConfigProperty(name = "signomix.signal.stream.keepalive", defaultValue = "15000")
+    long keepAliveInterval;
+
     @GET
     @Path("/test")
     public Response test() {
@@ -53,6 +72,118 @@ public class SignalRestApi {
         }
     }
 
+    @GET
+    @Path("/page")
+    public Response getSignalPage(@HeaderParam("Authentication") String token, @QueryParam("limit") int limit,
+            @QueryParam("cursor") String cursor, @QueryParam("eui") String deviceEui,
+            @QueryParam("level") Integer level, @QueryParam("sentinel") Long sentinelConfigId,
+            @QueryParam("from") Long from, @QueryParam("to") Long to) {
+        User user = authPort.getUser(token);
+        if (user == null) {
+            return Response.status(Response.Status.UNAUTHORIZED).build();
+        }
+        try {
+            SignalPage page = signalPort.getSignalPage(user, limit, cursor, deviceEui, level, sentinelConfigId,
+                    from, to);
+            return Response.ok().entity(page).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        } catch (SQLException e) {
+            return Response.serverError().entity(e.getMessage()).build();
+        }
+    }
+
+    /**
+     * Streams all matching signals as NDJSON, one signal per line. Responses are
+     * gzip-compressed when the client sends Accept-Encoding: gzip.
+     */
+    @GET
+    @Path("/export")
+    @Blocking
+    @Produces(RestMediaType.APPLICATION_NDJSON)
+    @RestStreamElementType(MediaType.APPLICATION_JSON)
+    public Multi<Signal> exportSignals(@HeaderParam("Authentication") String token,
+            @QueryParam("eui") String deviceEui, @QueryParam("level") Integer level,
+            @QueryParam("sentinel") Long sentinelConfigId, @QueryParam("from") Long from,
+            @QueryParam("to") Long to) {
+        User user = authPort.getUser(token);
+        if (user == null) {
+            throw new WebApplicationException(Response.Status.UNAUTHORIZED);
+        }
+        return signalPort.exportSignals(user, deviceEui, level, sentinelConfigId, from, to);
+    }
+
+    /**
+     * Pushes new signals of the user as server-sent events. A client
+     * reconnecting with the Last-Event-ID header, or the lastEventId
+     * parameter, receives the signals it missed, or a "reset" event when
+     * they are no longer available. The token may be passed in the token
+     * parameter instead of the Authentication header, as the browser
+     * EventSource cannot send headers. A comment line is sent every
+     * signomix.signal.stream.keepalive ms, so proxies do not close an idle
+     * connection.
+     */
+    @GET
+    @Path("/stream")
+    @Blocking
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public Multi<OutboundSseEvent> streamSignals(@HeaderParam("Authentication") String token,
+            @QueryParam("token") String tokenParam, @HeaderParam("Last-Event-ID") String lastEventId,
+            @QueryParam("lastEventId") String resumeFrom, @Context Sse sse) {
+        User user = authPort.getUser(token != null ? token : tokenParam);
+        if (user == null) {
+            throw new WebApplicationException(Response.Status.UNAUTHORIZED);
+        }
+        Multi<OutboundSseEvent> events = signalPort
+                .streamSignals(user, lastEventId != null ? lastEventId : resumeFrom)
+                .map(event -> toSseEvent(sse, event));
+        if (keepAliveInterval <= 0) {
+            return events;
+        }
+        Multi<OutboundSseEvent> keepAlive = Multi.createFrom().ticks()
+                .every(Duration.ofMillis(keepAliveInterval))
+                .onOverflow().drop()
+                .map(tick -> sse.newEventBuilder().comment("keep-alive").build());
+        return Multi.createBy().merging().streams(events, keepAlive);
+    }
+
+    private OutboundSseEvent toSseEvent(Sse sse, SignalStream.Event event) {
+        if (event.isReset()) {
+            return sse.newEventBuilder().name("reset").data("").build();
+        }
+        return sse.newEventBuilder()
+                .id(event.id())
+                .name("signal")
+                .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                .data(Signal.class, event.signal())
+                .build();
+    }
+
+    @GET
+    @Path("/jobs")
+    public Response getDeletionJobs(@HeaderParam("Authentication") String token) {
+        User user = authPort.getUser(token);
+        if (user == null) {
+            return Response.status(Response.Status.UNAUTHORIZED).build();
+        }
+        List<RetentionLogic.Job> jobs = signalPort.getDeletionJobs(user);
+        return Response.ok().entity(jobs).build();
+    }
+
+    @GET
+    @Path("/jobs/{id}")
+    public Response getDeletionJob(@HeaderParam("Authentication") String token, @PathParam("id") String id) {
+        User user = authPort.getUser(token);
+        if (user == null) {
+            return Response.status(Response.Status.UNAUTHORIZED).build();
+        }
+        RetentionLogic.Job job = signalPort.getDeletionJob(user, id);
+        if (job == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return Response.ok().entity(job).build();
+    }
+
     @GET
     @Path("/{id}")
     public Response getSignal(@HeaderParam("Authentication") String token, @PathParam("id") long id) {
@@ -65,8 +196,13 @@ public class SignalRestApi {
     @Path("/{id}")
     public Response deleteSignal(@HeaderParam("Authentication") String token, @PathParam("id") long id) {
         User user = authPort.getUser(token);
+        if (user == null) {
+            return Response.status(Response.Status.UNAUTHORIZED).build();
+        }
         if(id==-1){
-            signalPort.deleteSignals(user);
+            // all signals are deleted in the background
+            RetentionLogic.Job job = signalPort.deleteSignals(user);
+            return Response.accepted().entity(job).build();
         }else{
             signalPort.deleteSignal(user, id);
         }
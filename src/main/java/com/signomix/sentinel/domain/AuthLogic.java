@@ -3,12 +3,15 @@ package com.signomix.sentinel.domain;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 
+import com.signomix.common.Organization;
 import com.signomix.common.Token;
 import com.signomix.common.User;
 import com.signomix.common.db.AuthDao;
 import com.signomix.common.db.AuthDaoIface;
+import com.signomix.common.db.IotDatabaseException;
 import com.signomix.common.db.UserDao;
 import com.signomix.common.db.UserDaoIface;
+import com.signomix.common.tsdb.OrganizationDao;
 
 import io.agroal.api.AgroalDataSource;
 import io.quarkus.agroal.DataSource;
@@ -51,6 +54,7 @@ public class AuthLogic {
 
     AuthDaoIface authDao;
     UserDaoIface userDao;
+    OrganizationDao organizationDao;
 
     @ConfigProperty(name = "signomix.database.type")
     String databaseType;
@@ -58,7 +62,24 @@ public class AuthLogic {
     @ConfigProperty(name = "questdb.client.config")
     String questDbConfig;
 
+    @ConfigProperty(name = "signomix.cache.auth.size", defaultValue = "1000")
+    int cacheSize;
+
+    @ConfigProperty(name = "signomix.cache.auth.ttl", defaultValue = "30")
+    long cacheTtlSeconds;
+
+    // user id by token, users by id and organizations by id; short-lived, so a
+    // logout or a lock made by other services is seen within the TTL
+    private TtlCache<String, String> tokens;
+    private TtlCache<String, User> users;
+    private TtlCache<Long, Organization> organizations;
+
     void onStart(@Observes StartupEvent ev) {
+        tokens = new TtlCache<>(cacheSize, cacheTtlSeconds * 1000);
+        users = new TtlCache<>(cacheSize, cacheTtlSeconds * 1000);
+        organizations = new TtlCache<>(cacheSize, cacheTtlSeconds * 1000);
+        organizationDao = new OrganizationDao();
+        organizationDao.setDatasource(tsDs);
         if("h2".equalsIgnoreCase(databaseType)){
             authDao = new AuthDao();
             authDao.setDatasource(authDataSource, questDbConfig);
@@ -93,7 +114,60 @@ public class AuthLogic {
         return authDao.getUserId(token, sessionTokenLifetime, permanentTokenLifetime);
     }
 
+    /**
+     * Returns the id of the user authenticated with the token: the token issuer
+     * or, if not set, the token owner.
+     *
+     * @param token the session or permanent token
+     * @return the user id or null if the token is not valid
+     */
+    public String getTokenUserId(String token) {
+        return tokens.get(token, this::loadTokenUserId);
+    }
+
     public User getUser(String uid) {
+        return users.get(uid, this::loadUser);
+    }
+
+    /**
+     * @param id the organization id
+     * @return the organization or null if not found
+     * @throws IotDatabaseException
+     */
+    public Organization getOrganization(long id) throws IotDatabaseException {
+        return organizations.get(id, organizationDao::getOrganization);
+    }
+
+    /**
+     * Removes the token from the cache, e.g. after logout.
+     */
+    public void invalidateToken(String token) {
+        tokens.invalidate(token);
+    }
+
+    public void invalidateUser(String uid) {
+        users.invalidate(uid);
+    }
+
+    /**
+     * Removes the organization from the cache, e.g. after it has been locked.
+     */
+    public void invalidateOrganization(long id) {
+        organizations.invalidate(id);
+    }
+
+    private String loadTokenUserId(String token) {
+        Token t = getToken(token);
+        if (t == null) {
+            return null;
+        }
+        if (t.getIssuer() != null && !t.getIssuer().isEmpty()) {
+            return t.getIssuer();
+        }
+        return t.getUid();
+    }
+
+    private User loadUser(String uid) {
         User user = null;
         try {
             user = userDao.getUser(uid);
@@ -1,25 +1,76 @@
 package com.signomix.sentinel.domain;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import org.python.core.PyException;
 import org.python.core.PyObject;
-import org.python.util.PythonInterpreter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.signomix.common.iot.Device;
-import com.signomix.common.iot.LastDataPair;
 import com.signomix.common.iot.sentinel.SentinelConfig;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 
 @ApplicationScoped
 public class CommandEventLogic extends EventLogic {
 
+    private static final String PRELUDE = """
+            def process_java_object(config_obj, device_obj, commandMap):
+                global config
+                config = config_obj
+                global device
+                device = device_obj
+                result = ""
+                global command
+                command = commandMap
+                result = checkRule()
+                return result
+
+            def getDeviceGroupName(groupNumber):
+                if device is None:
+                    return None
+                if device.get("groups") is None:
+                    return None
+                groups = device.get("groups").split(",")
+                if groupNumber >= len(groups):
+                    return None
+                if groups[groupNumber] is None or groups[groupNumber].length() == 0:
+                    return None
+                return groups[groupNumber]
+
+            def getCommandParam(commandParameter):
+                global command
+                if command is None:
+                    return None
+                if command.get(commandParameter) is None:
+                    return None
+                return command.get(commandParameter)
+
+            def conditionsNotMet():
+                return ""
+
+            def conditionsMetWithCommand(measurement, value, commandTarget, command):
+                if value is None:
+                    return device.EUI + ";" + measurement + ";;" + commandTarget + ";" + command
+                return device.EUI + ";" + measurement + ";" + str(value) + ";" + commandTarget + ";" + command
+
+            def newCommand(commandTarget, command):
+                if commandTarget is None or command is None:
+                    return conditionsNotMet()
+                return ";;;" + commandTarget + ";" + command
+
+            # see def checkRule() below for example
+            """;
+
+    @Inject
+    PythonEngine pythonEngine;
+
     @Override
-    void checkSentinelRelatedData(String messageId, SentinelConfig config, Map deviceChannelMap, String eui, String[] messageArray) {
+    boolean checkSentinelRelatedData(EvaluationContext context, SentinelConfig config, Map deviceChannelMap,
+            String eui, DataFrame frame) {
+        return false;
     }
 
     @Override
@@ -35,53 +86,6 @@ public class CommandEventLogic extends EventLogic {
                 jString = jString.substring(1);
             }
             commandMap = objectMapper.readValue(jString, HashMap.class);
-            String script = """
-                    def process_java_object(config_obj, device_obj, commandMap):
-                        global config
-                        config = config_obj
-                        global device
-                        device = device_obj
-                        result = ""
-                        global command
-                        command = commandMap
-                        result = checkRule()
-                        return result
-
-                    def getDeviceGroupName(groupNumber)
-                        if device is None:
-                            return None
-                        if device.get("groups") is None:
-                            return None
-                        groups = device.get("groups").split(",")
-                        if groupNumber >= len(groups):
-                            return None
-                        if groups[groupNumber] is None or groups[groupNumber].length() == 0:
-                            return None
-                        return groups[groupNumber]
-
-                    def getCommandParam(commandParameter):
-                        global command
-                        if command is None:
-                            return None
-                        if command.get(commandParameter) is None:
-                            return None
-                        return command.get(commandParameter)
-
-                    def conditionsNotMet():
-                        return ""
-
-                    def conditionsMetWithCommand(measurement, value, commandTarget, command):
-                        if value is None:
-                            return device.EUI + ";" + measurement + ";;" + commandTarget + ";" + command
-                        return device.EUI + ";" + measurement + ";" + str(value) + ";" + commandTarget + ";" + command
-
-                    def newCommand(commandTarget, command):
-                        if commandTarget is None or command is None:
-                            return conditionsNotMet()
-                        return ";;;" + commandTarget + ";" + command
-
-                    # see def checkRule() below for example
-                    """;
             /*
             def checkRule():
                 v1 = getCommandParam("status")
@@ -91,19 +95,16 @@ public class CommandEventLogic extends EventLogic {
                 return conditionsMetWithCommand("", None, device.EUI, cmdString)
              */
                     
-            script = script + config.script;
-            logger.info("\n" + script);
-            PythonInterpreter interpreter = null;
+            logger.debug("\n" + config.script);
             PyObject pResult = null;
             try {
-                interpreter = new PythonInterpreter();
-                interpreter.set("config_obj", config);
-                interpreter.set("device_obj", device);
-                interpreter.set("commandMap", commandMap);
-                // Execute the Jython script
-                interpreter.exec(script);
-                // Call the Python function and get the result
-                pResult = interpreter.eval("process_java_object(config_obj,device_obj,commandMap)");
+                // Run the compiled prelude and script on a pooled interpreter
+                HashMap<String, Object> bindings = new HashMap<>();
+                bindings.put("config_obj", config);
+                bindings.put("device_obj", device);
+                bindings.put("commandMap", commandMap);
+                pResult = pythonEngine.run(PRELUDE, config, bindings, "process_java_object", config, device,
+                        commandMap);
 
                 logger.info("pResult: " + pResult.toString());
                 logger.info("pResult type: " + pResult.getType());
@@ -144,9 +145,6 @@ public class CommandEventLogic extends EventLogic {
                 result.error = true;
                 result.errorMessage = e.getMessage();
             } finally {
-                if (null != interpreter) {
-                    interpreter.close();
-                }
                 if (null != pResult) {
                     pResult = null;
                 }
@@ -162,16 +160,4 @@ public class CommandEventLogic extends EventLogic {
         return result;
     }
 
-/*     @Override
-    ConditionResult runPythonScript(SentinelConfig config, Device device, Map deviceChannelMap,
-            List<List<LastDataPair>> values) {
-        return null;
-    } */
-
-    @Override
-    ConditionResult runPythonScript(SentinelConfig config, String[] messageArray, int deviceRuleStatus) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException("Unimplemented method 'runPythonScript'");
-    }
-
 }
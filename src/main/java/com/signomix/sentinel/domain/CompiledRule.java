@@ -0,0 +1,300 @@
+package com.signomix.sentinel.domain;
+
+import java.util.List;
+import java.util.Map;
+
+import com.signomix.common.iot.sentinel.AlarmCondition;
+import com.signomix.common.iot.sentinel.SentinelConfig;
+
+/**
+ * Threshold rule compiled from SentinelConfig.conditions.
+ * Conditions are read from the config maps once and kept as primitive
+ * thresholds and enums, so checking a rule against a frame does not allocate.
+ * Instances are immutable and shared by all evaluation threads.
+ */
+public final class CompiledRule {
+
+    /** Maximum number of conditions checked by a threshold rule. */
+    public static final int MAX_CONDITIONS = 2;
+
+    public enum Operator {
+        NONE, GREATER, LESS, EQUAL, NOT_EQUAL;
+
+        static Operator of(Object code) {
+            if (!(code instanceof Number)) {
+                return NONE;
+            }
+            int value = ((Number) code).intValue();
+            if (value == AlarmCondition.CONDITION_GREATER) {
+                return GREATER;
+            } else if (value == AlarmCondition.CONDITION_LESS) {
+                return LESS;
+            } else if (value == AlarmCondition.CONDITION_EQUAL) {
+                return EQUAL;
+            } else if (value == AlarmCondition.CONDITION_NOT_EQUAL) {
+                return NOT_EQUAL;
+            }
+            return NONE;
+        }
+
+        /**
+         * @param value      value to check
+         * @param threshold  threshold from the rule
+         * @param hysteresis signed hysteresis (only used by GREATER and LESS)
+         */
+        boolean test(double value, double threshold, double hysteresis) {
+            switch (this) {
+                case GREATER:
+                    return Double.compare(value, threshold + hysteresis) > 0;
+                case LESS:
+                    return Double.compare(value, threshold - hysteresis) < 0;
+                case EQUAL:
+                    return Double.compare(value, threshold) == 0;
+                case NOT_EQUAL:
+                    return Double.compare(value, threshold) != 0;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    /** How the second threshold of a condition is combined with the first one. */
+    public enum Logic {
+        NONE, OR, AND
+    }
+
+    /** How a condition is combined with the result of the previous conditions. */
+    public enum Combine {
+        NONE, AND, OR
+    }
+
+    public static final class Condition {
+        final String measurement;
+        final Operator operator1;
+        final double value1;
+        final Operator operator2;
+        final double value2;
+        final Logic logic;
+        final Combine combine;
+
+        Condition(String measurement, Operator operator1, double value1, Operator operator2, double value2,
+                Logic logic, Combine combine) {
+            this.measurement = measurement;
+            this.operator1 = operator1;
+            this.value1 = value1;
+            this.operator2 = operator2;
+            this.value2 = value2;
+            this.logic = logic;
+            this.combine = combine;
+        }
+
+        boolean test(double value, double hysteresis) {
+            boolean met = operator1.test(value, value1, hysteresis);
+            if (logic == Logic.OR) {
+                met = met || operator2.test(value, value2, hysteresis);
+            } else if (logic == Logic.AND) {
+                met = met && operator2.test(value, value2, hysteresis);
+            }
+            return met;
+        }
+    }
+
+    final SentinelConfig config;
+    final long configId;
+    final double hysteresis;
+    final Condition[] conditions;
+    // per condition: 1 - violated by high values, -1 - by low values, null if
+    // the rule cannot be checked against extremes of several frames
+    final int[] extremes;
+
+    private CompiledRule(SentinelConfig config, double hysteresis, Condition[] conditions) {
+        this.config = config;
+        this.configId = config.id;
+        this.hysteresis = hysteresis;
+        this.conditions = conditions;
+        this.extremes = extremesOf(conditions);
+    }
+
+    /**
+     * A rule can be checked against the maximum (or minimum) of each measurement
+     * over several frames when each condition only compares with GREATER (or
+     * only with LESS) and conditions are combined with OR. The rule is then
+     * violated by the extremes if and only if it is violated by one of the
+     * frames.
+     */
+    private static int[] extremesOf(Condition[] conditions) {
+        if (conditions.length == 0) {
+            return null;
+        }
+        int[] result = new int[conditions.length];
+        for (int i = 0; i < conditions.length; i++) {
+            Condition condition = conditions[i];
+            if (i > 0 && condition.combine != Combine.OR) {
+                return null;
+            }
+            int direction = directionOf(condition.operator1);
+            if (direction == 0
+                    || (condition.logic != Logic.NONE && directionOf(condition.operator2) != direction)) {
+                return null;
+            }
+            for (int j = 0; j < i; j++) {
+                if (conditions[j].measurement.equalsIgnoreCase(condition.measurement) && result[j] != direction) {
+                    return null;
+                }
+            }
+            result[i] = direction;
+        }
+        return result;
+    }
+
+    private static int directionOf(Operator operator) {
+        if (operator == Operator.GREATER) {
+            return 1;
+        } else if (operator == Operator.LESS) {
+            return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * Compiles conditions of the config.
+     *
+     * @param config the sentinel config
+     * @return compiled rule
+     * @throws IllegalArgumentException if a condition has no measurement
+     */
+    public static CompiledRule compile(SentinelConfig config) {
+        List conditionList = config.conditions;
+        int size = conditionList == null ? 0 : Math.min(conditionList.size(), MAX_CONDITIONS);
+        Condition[] conditions = new Condition[size];
+        for (int i = 0; i < size; i++) {
+            Map conditionMap = (Map) conditionList.get(i);
+            Object measurement = conditionMap.get("measurement");
+            if (!(measurement instanceof String)) {
+                throw new IllegalArgumentException("Condition " + i + " of rule " + config.id
+                        + " has no measurement");
+            }
+            Operator operator2 = Operator.NONE;
+            double value2 = 0;
+            Logic logic = Logic.NONE;
+            Object logicCode = conditionMap.get("logic");
+            Object value2Obj = conditionMap.get("value2");
+            if (logicCode instanceof Number && ((Number) logicCode).intValue() > 0 && value2Obj instanceof Number) {
+                operator2 = Operator.of(conditionMap.get("condition2"));
+                value2 = ((Number) value2Obj).doubleValue();
+                logic = ((Number) logicCode).intValue() == 1 ? Logic.OR : Logic.AND;
+            }
+            Object value1Obj = conditionMap.get("value1");
+            Operator operator1 = value1Obj instanceof Number ? Operator.of(conditionMap.get("condition1"))
+                    : Operator.NONE;
+            double value1 = value1Obj instanceof Number ? ((Number) value1Obj).doubleValue() : 0;
+            Combine combine = Combine.NONE;
+            Object operatorCode = conditionMap.get("conditionOperator");
+            if (operatorCode instanceof Number) {
+                int code = ((Number) operatorCode).intValue();
+                if (code == AlarmCondition.CONDITION_OPERATOR_AND) {
+                    combine = Combine.AND;
+                } else if (code == AlarmCondition.CONDITION_OPERATOR_OR) {
+                    combine = Combine.OR;
+                }
+            }
+            conditions[i] = new Condition((String) measurement, operator1, value1, operator2, value2, logic,
+                    combine);
+        }
+        Double configHysteresis = config.hysteresis;
+        double hysteresis = configHysteresis == null ? 0 : Math.abs(configHysteresis);
+        return new CompiledRule(config, hysteresis, conditions);
+    }
+
+    /**
+     * Checks the rule against measurement values of a frame and stores the
+     * outcome in the result (violated, failed, measurement, value).
+     *
+     * @param names            measurement names of the frame
+     * @param values           measurement values of the frame
+     * @param count            number of measurements in the frame
+     * @param deviceRuleStatus status of the device before processing the current
+     *                         event (=0 - not registered yet, >0 - alert
+     *                         registered, <0 - alert unregistered)
+     * @param result           the result to fill
+     */
+    public void evaluate(String[] names, double[] values, int count, int deviceRuleStatus, ConditionResult result) {
+        result.failed = true;
+        result.violated = false;
+        result.value = null;
+        result.measurement = "";
+        if (count == 0) {
+            return;
+        }
+        // hysteresis value is always positive, direction is defined by deviceRuleStatus
+        double signedHysteresis = deviceRuleStatus > 0 ? -hysteresis : hysteresis;
+        boolean conditionsMet = false;
+        Condition condition;
+        for (int i = 0; i < conditions.length; i++) {
+            condition = conditions[i];
+            result.measurement = condition.measurement;
+            int slot = indexOf(names, count, condition.measurement);
+            if (slot < 0) {
+                break;
+            }
+            double value = values[slot];
+            boolean actualConditionMet = condition.test(value, signedHysteresis);
+            if (i == 0) {
+                conditionsMet = actualConditionMet;
+            } else if (condition.combine == Combine.AND) {
+                conditionsMet = conditionsMet && actualConditionMet;
+            } else if (condition.combine == Combine.OR) {
+                conditionsMet = conditionsMet || actualConditionMet;
+            }
+            result.failed = false;
+            result.value = value;
+        }
+        result.violated = conditionsMet;
+    }
+
+    /**
+     * @return true if the rule can be checked against extremes of measurements
+     *         collected from several frames
+     */
+    public boolean isExtremeReducible() {
+        return extremes != null;
+    }
+
+    /**
+     * @param measurement the measurement name
+     * @return 1 if the rule is violated by high values of the measurement, -1
+     *         if by low values, 0 if the measurement is not checked or the rule
+     *         cannot be checked against extremes
+     */
+    public int getExtreme(String measurement) {
+        if (extremes == null) {
+            return 0;
+        }
+        for (int i = 0; i < conditions.length; i++) {
+            if (conditions[i].measurement.equalsIgnoreCase(measurement)) {
+                return extremes[i];
+            }
+        }
+        return 0;
+    }
+
+    public long getConfigId() {
+        return configId;
+    }
+
+    public SentinelConfig getConfig() {
+        return config;
+    }
+
+    // frames hold a few measurements, so a scan is cheaper than keeping a
+    // lookup hint that would be shared by all pipeline workers
+    private static int indexOf(String[] names, int count, String measurement) {
+        for (int i = 0; i < count; i++) {
+            if (measurement.equalsIgnoreCase(names[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
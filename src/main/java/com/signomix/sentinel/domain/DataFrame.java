@@ -0,0 +1,234 @@
+package com.signomix.sentinel.domain;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Data frame received on the data-received topic.
+ * The payload is a comma separated list of 9 header fields (device EUI,
+ * organization ID, device name, status, alert status, latitude, longitude,
+ * altitude and one reserved field) followed by name=value measurements.
+ * The payload is parsed in a single pass and the frame is shared read-only by
+ * all rules evaluated for the message.
+ */
+public final class DataFrame {
+
+    public static final int HEADER_SIZE = 9;
+
+    private static final int INITIAL_CAPACITY = 16;
+    // maximum number of significant digits parsed without Double.parseDouble
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final String[] header = new String[HEADER_SIZE];
+    private int fieldCount;
+    private String[] names = new String[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private int count;
+    private volatile Map<String, Double> valuesMap;
+
+    private DataFrame() {
+    }
+
+    /**
+     * Parses the message.
+     * Fields which are not valid name=value declarations are skipped.
+     *
+     * @param message the message payload (UTF-8)
+     * @return parsed frame
+     */
+    public static DataFrame parse(byte[] message) {
+        DataFrame frame = new DataFrame();
+        int fieldIndex = 0;
+        int fieldStart = 0;
+        int separator = -1;
+        for (int i = 0; i <= message.length; i++) {
+            if (i < message.length && message[i] != ',') {
+                if (message[i] == '=' && separator < 0) {
+                    separator = i;
+                }
+                continue;
+            }
+            if (i > fieldStart) {
+                // trailing empty fields are not counted
+                frame.fieldCount = fieldIndex + 1;
+            }
+            if (fieldIndex < HEADER_SIZE) {
+                frame.header[fieldIndex] = new String(message, fieldStart, i - fieldStart, StandardCharsets.UTF_8);
+            } else if (separator > fieldStart) {
+                frame.addMeasurement(message, fieldStart, separator, i);
+            }
+            fieldIndex++;
+            fieldStart = i + 1;
+            separator = -1;
+        }
+        return frame;
+    }
+
+    private void addMeasurement(byte[] message, int start, int separator, int end) {
+        double value;
+        try {
+            value = parseDouble(message, separator + 1, end);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (count == names.length) {
+            names = Arrays.copyOf(names, count * 2);
+            values = Arrays.copyOf(values, count * 2);
+        }
+        names[count] = new String(message, start, separator - start, StandardCharsets.UTF_8);
+        values[count] = value;
+        count++;
+    }
+
+    /**
+     * Parses a decimal number. Numbers with up to 15 significant digits and no
+     * exponent are converted with a single, correctly rounded division; other
+     * numbers are passed to Double.parseDouble.
+     */
+    static double parseDouble(byte[] data, int start, int end) {
+        while (start < end && data[start] <= ' ') {
+            start++;
+        }
+        while (end > start && data[end - 1] <= ' ') {
+            end--;
+        }
+        int i = start;
+        boolean negative = false;
+        if (i < end && (data[i] == '-' || data[i] == '+')) {
+            negative = data[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean dot = false;
+        boolean anyDigit = false;
+        byte c;
+        for (; i < end; i++) {
+            c = data[i];
+            if (c >= '0' && c <= '9') {
+                anyDigit = true;
+                if (dot) {
+                    fractionDigits++;
+                }
+                if (mantissa == 0 && c == '0') {
+                    continue;
+                }
+                if (digits == MAX_FAST_DIGITS) {
+                    return parseDoubleSlow(data, start, end);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                return parseDoubleSlow(data, start, end);
+            }
+        }
+        if (!anyDigit || fractionDigits >= POW10.length) {
+            return parseDoubleSlow(data, start, end);
+        }
+        double value = fractionDigits == 0 ? (double) mantissa : mantissa / POW10[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private static double parseDoubleSlow(byte[] data, int start, int end) {
+        return Double.parseDouble(new String(data, start, end - start, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @return number of fields in the message (header fields and measurements)
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @param index header field index (0..8)
+     * @return header field or null if the message is shorter
+     */
+    public String getHeader(int index) {
+        return header[index];
+    }
+
+    public String getEui() {
+        return header[0];
+    }
+
+    /**
+     * @return number of parsed measurements
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return measurement names, valid up to getCount()
+     */
+    public String[] getNames() {
+        return names;
+    }
+
+    /**
+     * @return measurement values, valid up to getCount()
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    /**
+     * @param newNames  measurement names
+     * @param newValues measurement values in the order of newNames
+     * @param newCount  number of measurements
+     * @return copy of the frame header with the given measurements
+     */
+    DataFrame withMeasurements(String[] newNames, double[] newValues, int newCount) {
+        DataFrame frame = new DataFrame();
+        System.arraycopy(header, 0, frame.header, 0, HEADER_SIZE);
+        frame.fieldCount = fieldCount - count + newCount;
+        frame.names = newNames;
+        frame.values = newValues;
+        frame.count = newCount;
+        return frame;
+    }
+
+    /**
+     * Returns an unmodifiable map of measurement values, created on first use.
+     *
+     * @return map of values by measurement name
+     */
+    public Map<String, Double> getValuesMap() {
+        Map<String, Double> map = valuesMap;
+        if (map == null) {
+            HashMap<String, Double> newMap = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                newMap.put(names[i], values[i]);
+            }
+            map = Collections.unmodifiableMap(newMap);
+            valuesMap = map;
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < HEADER_SIZE && i < fieldCount; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(header[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            sb.append(',').append(names[i]).append('=').append(values[i]);
+        }
+        return sb.toString();
+    }
+
+}
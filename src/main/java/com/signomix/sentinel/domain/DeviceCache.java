@@ -0,0 +1,192 @@
+package com.signomix.sentinel.domain;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import com.signomix.common.Tag;
+import com.signomix.common.db.IotDatabaseException;
+import com.signomix.common.db.IotDatabaseIface;
+import com.signomix.common.iot.Device;
+
+import io.agroal.api.AgroalDataSource;
+import io.quarkus.agroal.DataSource;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * Read-through cache of device metadata used while processing events: the
+ * device, its tags and its groups already split and trimmed.
+ * Entries expire after the configured TTL and are evicted by DeviceEventLogic
+ * when the device is updated or removed.
+ */
+@ApplicationScoped
+public class DeviceCache {
+
+    @Inject
+    Logger logger;
+
+    @Inject
+    @DataSource("olap")
+    AgroalDataSource olapDs;
+
+    @ConfigProperty(name = "signomix.cache.device.size", defaultValue = "10000")
+    int maxSize;
+
+    @ConfigProperty(name = "signomix.cache.device.ttl", defaultValue = "60")
+    long ttlSeconds;
+
+    IotDatabaseIface olapDao;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // incremented on every invalidation, protects entries against stale loads
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Cached device data.
+     *
+     * @param device    the device
+     * @param tags      the device tags
+     * @param tag       name of the first device tag or empty string
+     * @param tagValue  value of the first device tag or empty string
+     * @param groups    the device groups (trimmed, without empty names)
+     * @param expiresAt expiration time in milliseconds
+     */
+    public record Entry(
+            Device device,
+            List<Tag> tags,
+            String tag,
+            String tagValue,
+            String[] groups,
+            long expiresAt) {
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        olapDao = new com.signomix.common.tsdb.IotDatabaseDao();
+        olapDao.setDatasource(olapDs);
+    }
+
+    /**
+     * Returns cached device data, reading it from the database if needed.
+     *
+     * @param deviceEui the device EUI
+     * @return the device data or null if the device does not exist
+     * @throws IotDatabaseException
+     */
+    public Entry get(String deviceEui) throws IotDatabaseException {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(deviceEui);
+        if (entry != null && entry.expiresAt() > now) {
+            hits.increment();
+            return entry;
+        }
+        misses.increment();
+        long gen = generation.get();
+        entry = load(deviceEui, now);
+        if (entry == null) {
+            entries.remove(deviceEui);
+            return null;
+        }
+        if (generation.get() != gen) {
+            return entry;
+        }
+        if (entries.size() >= maxSize) {
+            evict(now);
+        }
+        entries.put(deviceEui, entry);
+        // an invalidation started after the check above may have missed the
+        // entry: drop it, it will be read again
+        if (generation.get() != gen) {
+            entries.remove(deviceEui, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Removes the device from the cache.
+     *
+     * @param deviceEui the device EUI
+     */
+    public void invalidate(String deviceEui) {
+        generation.incrementAndGet();
+        entries.remove(deviceEui);
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private Entry load(String deviceEui, long now) throws IotDatabaseException {
+        Device device = olapDao.getDevice(deviceEui, false);
+        if (device == null) {
+            return null;
+        }
+        List<Tag> tags = olapDao.getDeviceTags(deviceEui);
+        if (tags == null) {
+            tags = List.of();
+        }
+        String tag = "";
+        String tagValue = "";
+        if (tags.size() > 0) {
+            // rules are selected by the first tag only, see RuleIndex
+            tag = tags.get(0).name;
+            tagValue = tags.get(0).value;
+        }
+        return new Entry(device, tags, tag, tagValue, splitGroups(device.getGroups()), now + ttlSeconds * 1000);
+    }
+
+    private String[] splitGroups(String groups) {
+        if (groups == null || groups.isEmpty()) {
+            return new String[0];
+        }
+        String[] names = groups.split(",");
+        ArrayList<String> result = new ArrayList<>(names.length);
+        String name;
+        for (int i = 0; i < names.length; i++) {
+            name = names[i].trim();
+            if (!name.isEmpty()) {
+                result.add(name);
+            }
+        }
+        return result.toArray(new String[0]);
+    }
+
+    /**
+     * Removes expired entries. If the cache is still full, removes entries until
+     * it is filled to 90% of its capacity.
+     */
+    private void evict(long now) {
+        entries.values().removeIf(entry -> entry.expiresAt() <= now);
+        int limit = maxSize - Math.max(1, maxSize / 10);
+        Iterator<String> it = entries.keySet().iterator();
+        while (entries.size() > limit && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+        logger.debug("Device cache evicted, size: " + entries.size());
+    }
+
+}
@@ -1,7 +1,5 @@
 package com.signomix.sentinel.domain;
 
-import java.util.List;
-
 import org.jboss.logging.Logger;
 import org.python.core.PyObject;
 import org.python.util.PythonInterpreter;
@@ -13,7 +11,6 @@ import com.signomix.common.db.ReportResult;
 import com.signomix.common.db.SentinelDaoIface;
 import com.signomix.common.db.UserDaoIface;
 import com.signomix.common.iot.Device;
-import com.signomix.common.iot.sentinel.SentinelConfig;
 
 import io.agroal.api.AgroalDataSource;
 import io.quarkus.agroal.DataSource;
@@ -47,6 +44,18 @@ public class DeviceEventLogic {
     @Inject
     SentinelLogic sentinelLogic;
 
+    @Inject
+    RuleIndex ruleIndex;
+
+    @Inject
+    DeviceCache deviceCache;
+
+    @Inject
+    RuleStatusTable ruleStatusTable;
+
+    @Inject
+    RecipientCache recipientCache;
+
     void onStart(@Observes StartupEvent ev) {
         sentinelDao = new com.signomix.common.tsdb.SentinelDao();
         sentinelDao.setDatasource(tsDs);
@@ -58,19 +67,20 @@ public class DeviceEventLogic {
 
     public void handleDeviceCreatedEvent(String deviceEui) {
         System.out.println("Handling create event: " + deviceEui);
-        // TODO
-        Device device = null;
+        DeviceCache.Entry entry = null;
         try {
-            device = olapDao.getDevice(deviceEui, false);
+            deviceCache.invalidate(deviceEui);
+            entry = deviceCache.get(deviceEui);
         } catch (IotDatabaseException e) {
             logger.error(e.getMessage());
             e.printStackTrace();
             return;
         }
-        if (device == null) {
+        if (entry == null) {
             logger.error("Device not found: " + deviceEui);
             return;
         }
+        Device device = entry.device();
         User user;
         try {
             user = userDao.getUser(device.getUserID());
@@ -83,27 +93,29 @@ public class DeviceEventLogic {
             logger.error("User not found: " + device.getUserID());
             return;
         }
-        List<SentinelConfig> configs = sentinelLogic.getSentinelConfigs(user, 100000, 0);
-        for (SentinelConfig config : configs) {
-            sentinelLogic.updateSentinelConfigDevices(user, config);
-        }
-        // TODO: update sentinel devices
-        // find sentinels related to the device
-        // add device to sentinel
+        // only mappings of this device are updated
+        sentinelLogic.updateDeviceMembership(user, device, entry.tags(), entry.groups());
+        ruleIndex.invalidateDevice(deviceEui);
     }
 
     public void handleDeviceRemovedEvent(String deviceEui) {
         System.out.println("Handling remove event: " + deviceEui);
+        deviceCache.invalidate(deviceEui);
         try {
             sentinelDao.removeDevice(deviceEui);
         } catch (IotDatabaseException e) {
             logger.error(e.getMessage());
             e.printStackTrace();
         }
+        ruleIndex.invalidateDevice(deviceEui);
+        ruleStatusTable.removeDevice(deviceEui);
+        recipientCache.invalidateDevice(deviceEui);
     }
 
     public void handleDeviceUpdatedEvent(String deviceEui) {
         System.out.println("Handling update event: " + deviceEui);
+        deviceCache.invalidate(deviceEui);
+        recipientCache.invalidateDevice(deviceEui);
         handleDeviceCreatedEvent(deviceEui);
     }
 
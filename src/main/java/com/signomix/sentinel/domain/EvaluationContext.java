@@ -0,0 +1,100 @@
+package com.signomix.sentinel.domain;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.signomix.common.iot.sentinel.SentinelConfig;
+
+/**
+ * Evaluation state of one received message.
+ * The context is created when the message is received and passed along with
+ * every rule evaluated for it. Each rule is completed exactly once, whether it
+ * was evaluated, failed or skipped; the context is finished when the last rule
+ * completes. Contexts not finished before the deadline are reaped by
+ * EvaluationTracker.
+ */
+public final class EvaluationContext {
+
+    private final String messageId;
+    private final String deviceEui;
+    private final Map<Long, SentinelConfig> configs;
+    private final Set<Long> remaining;
+    private final AtomicInteger pending;
+    private final long deadline;
+
+    /**
+     * @param messageId the message ID
+     * @param deviceEui the device EUI
+     * @param configs   rules to evaluate by config id
+     * @param timeout   time (ms) after which the context is considered expired
+     */
+    public EvaluationContext(String messageId, String deviceEui, Map<Long, SentinelConfig> configs, long timeout) {
+        this.messageId = messageId;
+        this.deviceEui = deviceEui;
+        this.configs = Collections.unmodifiableMap(configs);
+        this.remaining = ConcurrentHashMap.newKeySet(configs.size());
+        this.remaining.addAll(configs.keySet());
+        this.pending = new AtomicInteger(this.remaining.size());
+        this.deadline = System.currentTimeMillis() + timeout;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public String getDeviceEui() {
+        return deviceEui;
+    }
+
+    /**
+     * @param configId the config id
+     * @return the rule evaluated for the message or null
+     */
+    public SentinelConfig getConfig(long configId) {
+        return configs.get(configId);
+    }
+
+    /**
+     * @return unmodifiable map of rules by config id
+     */
+    public Map<Long, SentinelConfig> getConfigs() {
+        return configs;
+    }
+
+    /**
+     * Marks the rule as completed. Repeated calls for the same rule are
+     * ignored.
+     *
+     * @param configId the config id
+     * @return true if this call completed the last pending rule
+     */
+    boolean complete(long configId) {
+        if (!remaining.remove(configId)) {
+            return false;
+        }
+        return pending.decrementAndGet() == 0;
+    }
+
+    /**
+     * @return number of rules not completed yet
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    public boolean isFinished() {
+        return pending.get() == 0;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public boolean isExpired(long now) {
+        return now > deadline;
+    }
+
+}
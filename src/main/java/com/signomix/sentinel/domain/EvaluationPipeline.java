@@ -0,0 +1,137 @@
+package com.signomix.sentinel.domain;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * Rule evaluation stage.
+ * Tasks are partitioned by device EUI onto a fixed set of worker threads, each
+ * with a bounded queue, so rules of one device are evaluated in the order the
+ * frames arrived. When a partition queue is full, submit() blocks the caller
+ * (the MQTT consumer), which applies backpressure to the broker.
+ */
+@ApplicationScoped
+public class EvaluationPipeline {
+
+    @Inject
+    Logger logger;
+
+    @ConfigProperty(name = "signomix.pipeline.workers", defaultValue = "4")
+    int workers;
+
+    @ConfigProperty(name = "signomix.pipeline.queue.size", defaultValue = "1000")
+    int queueSize;
+
+    private Partition[] partitions;
+    private volatile boolean running;
+
+    private final class Partition implements Runnable {
+        final ArrayBlockingQueue<Runnable> queue;
+        final Thread thread;
+
+        Partition(int index, int capacity) {
+            queue = new ArrayBlockingQueue<>(capacity);
+            thread = new Thread(this, "sentinel-evaluation-" + index);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            Runnable task;
+            while (running) {
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    logger.error("Error while evaluating rule", e);
+                }
+            }
+        }
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        int size = Math.max(1, workers);
+        partitions = new Partition[size];
+        running = true;
+        for (int i = 0; i < size; i++) {
+            partitions[i] = new Partition(i, Math.max(1, queueSize));
+            partitions[i].thread.start();
+        }
+        logger.info("Evaluation pipeline started: " + size + " workers, queue size " + queueSize);
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        running = false;
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i].thread.interrupt();
+        }
+    }
+
+    /**
+     * Adds the task to the queue of the partition owning the device.
+     * Blocks while the queue is full.
+     *
+     * @param deviceEui the device EUI
+     * @param task      the task to run
+     * @return true if the task has been queued, false if it was dropped
+     */
+    public boolean submit(String deviceEui, Runnable task) {
+        Partition partition = partitions[partitionOf(deviceEui)];
+        try {
+            partition.queue.put(task);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Task for device " + deviceEui + " dropped, submitting thread interrupted");
+            return false;
+        }
+    }
+
+    /**
+     * @return number of tasks waiting in all partition queues
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (int i = 0; i < partitions.length; i++) {
+            depth += partitions[i].queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @param partition the partition index
+     * @return number of tasks waiting in the partition queue
+     */
+    public int getQueueDepth(int partition) {
+        return partitions[partition].queue.size();
+    }
+
+    /**
+     * @return total capacity of all partition queues
+     */
+    public int getQueueCapacity() {
+        return partitions.length * Math.max(1, queueSize);
+    }
+
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    int partitionOf(String deviceEui) {
+        return Math.floorMod(deviceEui == null ? 0 : deviceEui.hashCode(), partitions.length);
+    }
+
+}
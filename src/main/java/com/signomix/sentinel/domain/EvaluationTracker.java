@@ -0,0 +1,116 @@
+package com.signomix.sentinel.domain;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import com.signomix.common.iot.sentinel.SentinelConfig;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * Keeps track of messages being evaluated.
+ * A context is removed when all its rules are completed. Contexts which are
+ * still pending after the evaluation timeout are removed by a periodic reaper,
+ * so lost completions cannot make the registry grow.
+ */
+@ApplicationScoped
+public class EvaluationTracker {
+
+    @Inject
+    Logger logger;
+
+    @ConfigProperty(name = "signomix.evaluation.timeout", defaultValue = "60000")
+    long timeout;
+
+    @ConfigProperty(name = "signomix.evaluation.reaper.interval", defaultValue = "10000")
+    long reaperInterval;
+
+    private final ConcurrentHashMap<EvaluationContext, Boolean> contexts = new ConcurrentHashMap<>();
+    private ScheduledExecutorService reaper;
+
+    void onStart(@Observes StartupEvent ev) {
+        reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "sentinel-evaluation-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1000, reaperInterval);
+        reaper.scheduleWithFixedDelay(this::reap, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        if (reaper != null) {
+            reaper.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates and registers the evaluation context of a message.
+     *
+     * @param messageId the message ID
+     * @param deviceEui the device EUI
+     * @param configs   rules to evaluate by config id
+     * @return the context or null if there are no rules to evaluate
+     */
+    public EvaluationContext start(String messageId, String deviceEui, Map<Long, SentinelConfig> configs) {
+        if (configs == null || configs.isEmpty()) {
+            return null;
+        }
+        EvaluationContext context = new EvaluationContext(messageId, deviceEui, configs, timeout);
+        contexts.put(context, Boolean.TRUE);
+        return context;
+    }
+
+    /**
+     * Marks the rule of the context as completed.
+     *
+     * @param context  the evaluation context
+     * @param configId the config id
+     */
+    public void complete(EvaluationContext context, long configId) {
+        if (context.complete(configId)) {
+            contexts.remove(context);
+            logger.debug("All configs processed for messageId: " + context.getMessageId());
+        }
+    }
+
+    /**
+     * @return number of messages being evaluated
+     */
+    public int getActiveCount() {
+        return contexts.size();
+    }
+
+    void reap() {
+        long now = System.currentTimeMillis();
+        int reaped = 0;
+        Iterator<EvaluationContext> it = contexts.keySet().iterator();
+        EvaluationContext context;
+        while (it.hasNext()) {
+            context = it.next();
+            if (context.isFinished()) {
+                it.remove();
+            } else if (context.isExpired(now)) {
+                it.remove();
+                reaped++;
+                logger.warn("Evaluation of message " + context.getMessageId() + " from " + context.getDeviceEui()
+                        + " expired with " + context.getPending() + " pending configs");
+            }
+        }
+        if (reaped > 0) {
+            logger.warn("Expired evaluation contexts removed: " + reaped);
+        }
+    }
+
+}
@@ -1,8 +1,8 @@
 package com.signomix.sentinel.domain;
 
+import java.sql.Timestamp;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
@@ -10,7 +10,6 @@ import org.eclipse.microprofile.reactive.messaging.Channel;
 import org.eclipse.microprofile.reactive.messaging.Emitter;
 import org.jboss.logging.Logger;
 
-import com.signomix.common.Tag;
 import com.signomix.common.db.IotDatabaseException;
 import com.signomix.common.db.IotDatabaseIface;
 import com.signomix.common.db.SentinelDaoIface;
@@ -23,7 +22,6 @@ import com.signomix.common.iot.sentinel.Signal;
 import io.agroal.api.AgroalDataSource;
 import io.quarkus.agroal.DataSource;
 import io.quarkus.runtime.StartupEvent;
-import io.vertx.core.Vertx;
 import jakarta.enterprise.event.Observes;
 import jakarta.inject.Inject;
 
@@ -47,6 +45,33 @@ public abstract class EventLogic {
     @Inject
     SignalLogic sentinelLogic;
 
+    @Inject
+    RuleIndex ruleIndex;
+
+    @Inject
+    DeviceCache deviceCache;
+
+    @Inject
+    EvaluationTracker evaluationTracker;
+
+    @Inject
+    RuleStatusTable ruleStatusTable;
+
+    @Inject
+    EventSink eventSink;
+
+    @Inject
+    MessageTemplates messageTemplates;
+
+    @Inject
+    RecipientCache recipientCache;
+
+    @Inject
+    SentinelMetrics metrics;
+
+    @Inject
+    RuleBudget ruleBudget;
+
     @Inject
     @Channel("alerts")
     Emitter<String> alertEmitter;
@@ -54,16 +79,15 @@ public abstract class EventLogic {
     @ConfigProperty(name = "signomix.signals.used", defaultValue = "false")
     Boolean signalsUsed;
 
-    @Inject
-    Vertx vertx;
-
     public static final int EVENT_TYPE_DATA = 0;
     public static final int EVENT_TYPE_COMMAND = 1;
     public static final int EVENT_TYPE_DEVICE = 2;
 
     private static final long DEFAULT_ORGANIZATION_ID = 1;
 
-    HashMap<String, HashMap<Long, SentinelConfig>> messageConfigs = new HashMap<>();
+    // reused by renderMessage() on each evaluation thread
+    private static final ThreadLocal<StringBuilder> MESSAGE_BUILDER = ThreadLocal
+            .withInitial(() -> new StringBuilder(256));
 
     void onApplicationStart(@Observes StartupEvent e) {
         sentinelDao = new com.signomix.common.tsdb.SentinelDao();
@@ -76,6 +100,30 @@ public abstract class EventLogic {
         oltpDao.setDatasource(tsDs);
     }
 
+    /**
+     * Removes the "&amp;" or "#" prefix of a command string.
+     *
+     * @param commandString the command string received from the device or null
+     * @return the command without prefix
+     */
+    public static String stripCommandPrefix(String commandString) {
+        if (commandString != null && (commandString.startsWith("&") || commandString.startsWith("#"))) {
+            return commandString.substring(1);
+        }
+        return commandString;
+    }
+
+    /**
+     * @param commandString the command string received from the device
+     * @return EUI of the device the command belongs to or null if the command
+     *         is invalid
+     */
+    public static String getCommandEui(String commandString) {
+        String command = stripCommandPrefix(commandString);
+        int separator = command == null ? -1 : command.indexOf(';');
+        return separator > 0 ? command.substring(0, separator) : null;
+    }
+
     /**
      * Handles the event of data being received from a device.
      * Finds all sentinel definitions related to the device and checks alert
@@ -87,14 +135,9 @@ public abstract class EventLogic {
      */
     public void handleEvent(int type, String eui, String commandString, String messageId) {
         // logger.debug("Handling data received event: " + eui);
-        // testJsInterpreter(deviceEui);
-        // testPythonInterpreter(deviceEui);
         String deviceEui = null;
-        String command = commandString;
+        String command = stripCommandPrefix(commandString);
         String jsonString = null;
-        if (command != null && (command.startsWith("&") || command.startsWith("#"))) {
-            command = command.substring(1);
-        }
         String[] commandParts = {};
         if (command != null) {
             commandParts = command.split(";", -1);
@@ -115,16 +158,17 @@ public abstract class EventLogic {
         }
         Device device = null;
         try {
-            device = olapDao.getDevice(deviceEui, false);
-            List<Tag> tags = olapDao.getDeviceTags(deviceEui);
-            logger.debug("tags: " + deviceEui + " " + tags.size());
-            if (tags.size() > 0) {
-                // TODO: handle multiple tags
-                logger.debug("tag: " + tags.get(0).name + " " + tags.get(0).value);
-                tag = tags.get(0).name;
-                tagValue = tags.get(0).value;
+            long start = System.nanoTime();
+            DeviceCache.Entry deviceEntry = deviceCache.get(deviceEui);
+            metrics.record(SentinelMetrics.Stage.DEVICE_LOOKUP, System.nanoTime() - start);
+            if (deviceEntry == null) {
+                logger.error("Device not found: " + deviceEui);
+                return;
             }
-            groups = device.getGroups().split(",");
+            device = deviceEntry.device();
+            tag = deviceEntry.tag();
+            tagValue = deviceEntry.tagValue();
+            groups = deviceEntry.groups();
         } catch (IotDatabaseException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
@@ -187,71 +231,76 @@ public abstract class EventLogic {
          * e.printStackTrace();
          * }
          */
+        long configLookupStart = System.nanoTime();
         HashMap<Long, SentinelConfig> configs = getConfigs(type, deviceEui, tag, tagValue, groups, type);
+        metrics.record(SentinelMetrics.Stage.CONFIG_LOOKUP, System.nanoTime() - configLookupStart);
         if (configs == null || configs.isEmpty()) {
             logger.debug("No sentinel configs found for device: " + deviceEui);
             return;
         }
 
-        messageConfigs.put(messageId, configs);
-
-        // check alert conditions for each sentinel definition from configs map
-        logger.debug("Number of sentinel configs: " + deviceEui + " " + configs.size());
+        HashMap<Long, SentinelConfig> activeConfigs = new HashMap<>();
         Iterator it = configs.entrySet().iterator();
         while (it.hasNext()) {
             Map.Entry pair = (Map.Entry) it.next();
             SentinelConfig config = (SentinelConfig) pair.getValue();
-            if (!config.active) {
-                continue;
+            if (config.active && !ruleBudget.isQuarantined(config.id)) {
+                activeConfigs.put(config.id, config);
             }
-            runSentinelCheckForConfig(messageId, config, device, jsonString, null);
+        }
+        EvaluationContext context = evaluationTracker.start(messageId, deviceEui, activeConfigs);
+        if (context == null) {
+            logger.debug("No active sentinel configs found for device: " + deviceEui);
+            return;
+        }
+
+        // check alert conditions for each sentinel definition from configs map
+        logger.debug("Number of sentinel configs: " + deviceEui + " " + activeConfigs.size());
+        for (SentinelConfig config : context.getConfigs().values()) {
+            runSentinelCheck(context, config, device, jsonString, null);
         }
     }
 
-    public void handleEvent(int type, String[] messageArray, String messageId) {
-        String deviceEui = messageArray[0];
-        String organizationIdString = messageArray[1];
-        String deviceName = messageArray[2];
-        String statusStr = messageArray[3];
-        String alertStatusStr = messageArray[4];
-        String latitudeStr = messageArray[5];
-        String longitudeStr = messageArray[6];
-        String altitudeStr = messageArray[7]; 
+    /**
+     * Handles the data frame received from a device.
+     * 
+     * @param type      the event type
+     * @param frame     the parsed data frame
+     * @param messageId the message ID of the received data
+     */
+    public void handleEvent(int type, DataFrame frame, String messageId) {
+        String deviceEui = frame.getEui();
 
         String tag = "";
         String tagValue = "";
         String[] groups = new String[0];
         Device device = null;
         try {
-            device = olapDao.getDevice(deviceEui, false);
-            if (device == null) {
+            long start = System.nanoTime();
+            DeviceCache.Entry deviceEntry = deviceCache.get(deviceEui);
+            metrics.record(SentinelMetrics.Stage.DEVICE_LOOKUP, System.nanoTime() - start);
+            if (deviceEntry == null) {
                 logger.error("Device not found: " + deviceEui);
                 return;
             }
-            List<Tag> tags = olapDao.getDeviceTags(deviceEui);
-            logger.debug("tags: " + deviceEui + " " + tags.size());
-            if (tags.size() > 0) {
-                // TODO: handle multiple tags
-                logger.debug("tag: " + tags.get(0).name + " " + tags.get(0).value);
-                tag = tags.get(0).name;
-                tagValue = tags.get(0).value;
-            }
-            groups = device.getGroups().split(",");
+            device = deviceEntry.device();
+            tag = deviceEntry.tag();
+            tagValue = deviceEntry.tagValue();
+            groups = deviceEntry.groups();
         } catch (IotDatabaseException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
             logger.error(e.getMessage());
             return;
         }
+        long configLookupStart = System.nanoTime();
         HashMap<Long, SentinelConfig> configs = getConfigs(type, deviceEui, tag, tagValue, groups, type);
+        metrics.record(SentinelMetrics.Stage.CONFIG_LOOKUP, System.nanoTime() - configLookupStart);
         if (configs == null || configs.isEmpty()) {
             logger.debug("No sentinel configs found for device: " + deviceEui);
             return;
         }
-        messageConfigs.put(messageId, configs);
-
-        // check alert conditions for each sentinel definition from configs map
-        logger.debug("Number of sentinel configs: " + deviceEui + " " + configs.size());
+        HashMap<Long, SentinelConfig> activeConfigs = new HashMap<>();
         Iterator it = configs.entrySet().iterator();
         while (it.hasNext()) {
             Map.Entry pair = (Map.Entry) it.next();
@@ -259,6 +308,10 @@ public abstract class EventLogic {
             if (!config.active) {
                 continue;
             }
+            if (ruleBudget.isQuarantined(config.id)) {
+                logger.debug("Skipping quarantined sentinel config: " + config.id);
+                continue;
+            }
             if (device.getOrganizationId().longValue() != DEFAULT_ORGANIZATION_ID
                     && config.organizationId.longValue() != device.getOrganizationId().longValue()) {
                 logger.info("Skipping sentinel config for different organization: device org="
@@ -272,85 +325,76 @@ public abstract class EventLogic {
                 // skip default organization sentinels for non script owner devices
                 continue;
             }
-            runSentinelCheckForConfig(messageId, config, device, null, messageArray);
+            activeConfigs.put(config.id, config);
+        }
+        EvaluationContext context = evaluationTracker.start(messageId, deviceEui, activeConfigs);
+        if (context == null) {
+            logger.debug("No active sentinel configs found for device: " + deviceEui);
+            return;
+        }
+
+        // check alert conditions for each sentinel definition from configs map
+        logger.debug("Number of sentinel configs: " + deviceEui + " " + activeConfigs.size());
+        for (SentinelConfig config : context.getConfigs().values()) {
+            runSentinelCheck(context, config, device, null, frame);
+        }
+    }
+
+    /**
+     * Runs the check of a single config. The config is completed in the
+     * evaluation context here, unless the check was handed over to the
+     * evaluation pipeline.
+     */
+    private void runSentinelCheck(EvaluationContext context, SentinelConfig config, Device device,
+            String jsonString, DataFrame frame) {
+        boolean submitted = false;
+        try {
+            submitted = runSentinelCheckForConfig(context, config, device, jsonString, frame);
+        } catch (Exception e) {
+            logger.error("Error while running sentinel check for config: " + config.id, e);
+        } finally {
+            if (!submitted) {
+                evaluationTracker.complete(context, config.id);
+            }
         }
     }
 
     public HashMap<Long, SentinelConfig> getConfigs(int eventType, String deviceEui, String tag, String tagValue,
             String[] groups, int configType) {
-        HashMap<Long, SentinelConfig> configs = new HashMap<>();
         // find all sentinel definitions related to the device
-        try {
-            List<SentinelConfig> configList = sentinelDao.getConfigsByDevice(deviceEui, 1000, 0, eventType);
-            for (SentinelConfig config : configList) {
-                if (config.active) {
-                    configs.put(config.id, config);
-                }
-            }
-        } catch (IotDatabaseException e) {
-            logger.error(e.getMessage());
-            e.printStackTrace();
+        HashMap<Long, SentinelConfig> configs = ruleIndex.getConfigs(eventType, deviceEui, tag, tagValue, groups);
+        if (configs == null) {
             // TODO: inform user/admin about error
             return null;
         }
-        if (!tag.isEmpty() && !tagValue.isEmpty()) {
-            try {
-                List<SentinelConfig> tagConfigs = sentinelDao.getConfigsByTag(tag, tagValue, 1000, 0, eventType);
-                logger.debug("Number of sentinel configs for tag: " + deviceEui + " " + tag + ":" + tagValue + " "
-                        + tagConfigs.size());
-                for (SentinelConfig config : tagConfigs) {
-                    if (config.active) {
-                        configs.put(config.id, config);
-                    }
-                }
-            } catch (IotDatabaseException e) {
-                logger.error(e.getMessage());
-                e.printStackTrace();
-            }
-        }
-        try {
-            String groupName;
-            for (int i = 0; i < groups.length; i++) {
-                groupName = groups[i].trim();
-                if (groupName.isEmpty()) {
-                    continue;
-                }
-                List<SentinelConfig> groupConfigs = sentinelDao.getConfigsByGroup(groups[i].trim(), 1000, 0, eventType);
-                for (SentinelConfig config : groupConfigs) {
-                    if (config.active) {
-                        configs.put(config.id, config);
-                    }
-                }
-                groupConfigs.clear();
-            }
-        } catch (IotDatabaseException e) {
-            logger.error(e.getMessage());
-            e.printStackTrace();
-        }
         return configs;
     }
 
-    void runSentinelCheckForConfig(String messageId, SentinelConfig config, Device device, String jsonString,
-            String[] messageArray) {
+    /**
+     * @return true if the config has been submitted to the evaluation pipeline,
+     *         which completes it in the evaluation context
+     */
+    boolean runSentinelCheckForConfig(EvaluationContext context, SentinelConfig config, Device device,
+            String jsonString, DataFrame frame) {
         logger.debug("Running sentinel check for config: " + config.id);
 
         if (config.eventType == SentinelConfig.EVENT_TYPE_COMMAND) {
             if (!config.useScript) {
                 logger.warn("Command event received, but script is not set");
-                return;
+                return false;
             }
             if (config.script == null || config.script.isEmpty()) {
                 logger.warn("Command event received, but script is empty");
-                return;
+                return false;
             }
             runPythonScript(config, device, jsonString);
-            return;
+            return false;
         }
 
         // In the map, key==deviceEui, value==(map of {columnName:channel}) where
         // columnName is d1, d2, ..., d24
         Map<String, Map<String, String>> deviceChannelMap = null;
-        if (messageArray.length < 9) {
+        if (frame == null || frame.getFieldCount() < DataFrame.HEADER_SIZE) {
             try {
                 if (config.checkOthers) {
                     deviceChannelMap = sentinelDao.getDeviceChannelsByConfigId(config.id);
@@ -360,30 +404,28 @@ public abstract class EventLogic {
             } catch (IotDatabaseException e) {
                 e.printStackTrace();
                 logger.error(e.getMessage());
-                return;
+                return false;
             }
             if (deviceChannelMap == null || deviceChannelMap.isEmpty()) {
                 logger.debug("No devices found for sentinel: " + config.id);
-                return;
+                return false;
             }
         }
 
-        checkSentinelRelatedData(messageId, config, deviceChannelMap, device.getEUI(), messageArray);
+        return checkSentinelRelatedData(context, config, deviceChannelMap, device.getEUI(), frame);
     }
 
-    void processResult(String messageId, ConditionResult conditionResult, int deviceRuleStatus) {
-        // From all the configs processed for the messageId, find the one
+    void processResult(EvaluationContext context, ConditionResult conditionResult, int deviceRuleStatus) {
+        // From all the configs evaluated for the message, find the one
         // that was used to create the conditionResult
         // deviceRuleStatus is the status of the device before processing the current
         // event
         // (<= 0 - not registered yet, >0 - registered)
-        HashMap<Long, SentinelConfig> configs = null;
-        configs = messageConfigs.get(messageId);
-        SentinelConfig config = null;
-        if (configs != null) {
-            config = configs.get(conditionResult.configId);
-        } else {
-            logger.error("No configs found for messageId: " + messageId);
+        // The config is completed in the context by the caller.
+        SentinelConfig config = context.getConfig(conditionResult.configId);
+        if (config == null) {
+            logger.error("Config " + conditionResult.configId + " not found for messageId: "
+                    + context.getMessageId());
             return;
         }
 
@@ -446,66 +488,51 @@ public abstract class EventLogic {
                 }
             }
         }
-
-        //
-        config.processed = true;
-        configs.put(conditionResult.configId, config);
-        messageConfigs.put(messageId, configs);
-
-        // finally check if all configs related to the messageId are processed
-        boolean complete = true;
-        for (Map.Entry<Long, SentinelConfig> entry : configs.entrySet()) {
-            complete = complete && entry.getValue().processed;
-            logger.debug("Config processed: " + entry.getKey() + " " + entry.getValue().processed);
-        }
-        if (complete) {
-            logger.debug("All configs processed for messageId: " + messageId);
-            messageConfigs.remove(messageId);
-        }
-
+        logger.debug("Config processed: " + conditionResult.configId);
     }
 
     protected int getDeviceRuleStatus(Long ruleId, String eui) {
-        int status = 0;
-        try {
-            status = sentinelDao.getSentinelStatus(ruleId, eui);
-        } catch (IotDatabaseException e) {
-            logger.warn("Error getting device rule status", e);
-        }
-        return status;
+        return ruleStatusTable.get(ruleId, eui);
+    }
+
+    /**
+     * Queues the sentinel event. The rule status table is updated at once.
+     */
+    private void addSentinelEvent(SentinelConfig config, String eui, int level, String message) {
+        eventSink.addSentinelEvent(config.id, eui, level, message);
     }
 
     void sendAlert(String alertType, String userId, String deviceEui, String alertSubject, String alertMessage,
             long createdAt) {
         if (!signalsUsed) {
-            try {
-                oltpDao.addAlert(alertType, deviceEui, userId, alertMessage, createdAt);
-            } catch (IotDatabaseException e) {
-                e.printStackTrace();
-            }
+            eventSink.addAlert(alertType, deviceEui, userId, alertMessage, createdAt);
         }
         logger.debug("Sending alert: " + userId + ";" + deviceEui + ";" + alertType + ";" + alertMessage + ";"
                 + alertSubject);
-        alertEmitter.send(userId + "\t" + deviceEui + "\t" + alertType + "\t" + alertMessage + "\t" + alertSubject);
+        emit(userId + "\t" + deviceEui + "\t" + alertType + "\t" + alertMessage + "\t" + alertSubject);
+    }
+
+    private void emit(String alert) {
+        long start = System.nanoTime();
+        alertEmitter.send(alert);
+        metrics.record(SentinelMetrics.Stage.EMIT, System.nanoTime() - start);
+        metrics.alertEmitted();
     }
 
     void saveSignal(int alertLevel, long configId, long organizationId, String userId, String deviceEui,
             String alertSubject, String alertMessage, long createdAt) {
-        try {
-            Signal signal = new Signal();
-            signal.deviceEui = deviceEui;
-            signal.level = alertLevel;
-            signal.subjectPl = alertSubject;
-            signal.subjectEn = alertSubject;
-            signal.messageEn = alertMessage;
-            signal.messagePl = alertMessage;
-            signal.sentinelConfigId = configId;
-            signal.userId = userId;
-            signal.organizationId = organizationId;
-            signalDao.saveSignal(signal);
-        } catch (IotDatabaseException e) {
-            e.printStackTrace();
-        }
+        Signal signal = new Signal();
+        signal.deviceEui = deviceEui;
+        signal.level = alertLevel;
+        signal.subjectPl = alertSubject;
+        signal.subjectEn = alertSubject;
+        signal.messageEn = alertMessage;
+        signal.messagePl = alertMessage;
+        signal.sentinelConfigId = configId;
+        signal.userId = userId;
+        signal.organizationId = organizationId;
+        signal.createdAt = new Timestamp(createdAt);
+        eventSink.saveSignal(signal);
     }
 
     String getAlertType(int alertLevel) {
@@ -529,27 +556,13 @@ public abstract class EventLogic {
         return alertType;
     }
 
-    String getMessageSubject(String message) {
-        int idx = message.indexOf("{info}");
-        if (idx < 0) {
-            return "";
-        }
-        String subject = message.substring(0, idx);
-        return subject;
-    }
-
-    String getMessageBody(String message) {
-        int idx = message.indexOf("{info}");
-        if (idx < 0) {
-            return message;
-        }
-        String body = message.substring(idx + 6);
-        return body;
-    }
-
-    String transformMessage(String message, SentinelConfig config,
-            Device device, DeviceGroup group, ConditionResult violationResult) {
-        String result = message;
+    /**
+     * Returns values of the message template variables for the alert.
+     * 
+     * @return values indexed by MessageTemplate.Variable.ordinal()
+     */
+    String[] getMessageValues(SentinelConfig config, Device device, DeviceGroup group,
+            ConditionResult violationResult) {
         String targetEui = "";
         String targetName = "";
         String deviceEui = "";
@@ -569,51 +582,31 @@ public abstract class EventLogic {
                 targetName = group.getName();
             }
         }
-        result = result.replaceAll("\\{target.eui\\}", targetEui);
-        result = result.replaceAll("\\{target.name\\}", targetName);
-        result = result.replaceAll("\\{tag.name\\}", config.tagName);
-        result = result.replaceAll("\\{tag.value\\}", config.tagValue);
-        result = result.replaceAll("\\{device.eui\\}", deviceEui);
-        result = result.replaceAll("\\{device.name\\}", deviceName);
-
-        if (violationResult.measurement != null) {
-            result = result.replaceAll("\\{measurement\\}", violationResult.measurement);
-            result = result.replaceAll("\\{var\\}", violationResult.measurement);
-        }
+        String[] values = new String[MessageTemplate.VARIABLE_COUNT];
+        values[MessageTemplate.Variable.TARGET_EUI.ordinal()] = nonNull(targetEui);
+        values[MessageTemplate.Variable.TARGET_NAME.ordinal()] = nonNull(targetName);
+        values[MessageTemplate.Variable.TAG_NAME.ordinal()] = nonNull(config.tagName);
+        values[MessageTemplate.Variable.TAG_VALUE.ordinal()] = nonNull(config.tagValue);
+        values[MessageTemplate.Variable.DEVICE_EUI.ordinal()] = nonNull(deviceEui);
+        values[MessageTemplate.Variable.DEVICE_NAME.ordinal()] = nonNull(deviceName);
+        // {measurement}, {var} and {value} are left as they are when not known
+        values[MessageTemplate.Variable.MEASUREMENT.ordinal()] = violationResult.measurement;
+        values[MessageTemplate.Variable.VAR.ordinal()] = violationResult.measurement;
         if (violationResult.value != null) {
-            result = result.replaceAll("\\{value\\}", violationResult.value.toString());
+            values[MessageTemplate.Variable.VALUE.ordinal()] = violationResult.value.toString();
         }
-
-        return result;
+        return values;
     }
 
-    /**
-     * Transforms the team variables {device.team}, {devic.admins}, {device.owner}
-     * to a list of user IDs.
-     * 
-     * @param team
-     * @param device
-     * @return
-     */
-    String transformTeam(String team, Device device) {
-        if (team == null || team.isEmpty()) {
-            return "";
-        }
-        String result = team;
-        String deviceTeam = device != null ? device.getTeam() : "";
-        String deviceAdmins = device != null ? device.getAdministrators() : "";
-        String deviceOwner = device != null ? device.getUserID() : "";
-        if (deviceTeam != null && !deviceTeam.isEmpty()) {
-            result = result.replace("{device.team}", deviceTeam.trim());
-        }
-        if (deviceAdmins != null && !deviceAdmins.isEmpty()) {
-            result = result.replace("{device.admins}", deviceAdmins.trim());
-        }
-        if (deviceOwner != null && !deviceOwner.isEmpty()) {
-            result = result.replace("{device.owner}", deviceOwner.trim());
-        }
+    String renderMessage(MessageTemplate template, String[] values) {
+        StringBuilder sb = MESSAGE_BUILDER.get();
+        sb.setLength(0);
+        template.render(sb, values);
+        return sb.toString();
+    }
 
-        return result;
+    private static String nonNull(String value) {
+        return value != null ? value : "";
     }
 
     private void saveResetEvent(SentinelConfig config, Device device, ConditionResult violationResult) {
@@ -626,21 +619,15 @@ public abstract class EventLogic {
                 e.printStackTrace();
             }
         }
-        String message = transformMessage(getMessageBody(config.conditionOkMessage), config, device, group,
-                violationResult);
-        String alertSubject = transformMessage(getMessageSubject(config.conditionOkMessage), config, device, group,
-                violationResult);
-        try {
-            sentinelDao.addSentinelEvent(
-                    config.id,
-                    device != null ? device.getEUI() : "",
-                    (-1 * config.alertLevel),
-                    message,
-                    message);
-        } catch (IotDatabaseException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
+        MessageTemplates.Message template = messageTemplates.getConditionOkMessage(config);
+        String[] values = getMessageValues(config, device, group, violationResult);
+        String message = renderMessage(template.body(), values);
+        String alertSubject = renderMessage(template.subject(), values);
+        addSentinelEvent(
+                config,
+                device != null ? device.getEUI() : "",
+                (-1 * config.alertLevel),
+                message);
         if (!config.conditionOk) {
             // logger.debug("Condition OK not set for sentinel: " + config.id);
             return;
@@ -648,55 +635,15 @@ public abstract class EventLogic {
         long createdAt = System.currentTimeMillis();
         String alertType = getAlertType(config.alertLevel);
         // alert won't be sent to its creator (owner) - only to team members and admins
-        String team = transformTeam(config.team, device);
-        if (!team.isEmpty()) {
-            String[] teamMembers = team.split(",");
-            for (int i = 0; i < teamMembers.length; i++) {
-                if (teamMembers[i].isEmpty()) {
-                    continue;
-                }
-                saveSignal(
-                        -1 * config.alertLevel,
-                        config.id,
-                        config.organizationId,
-                        teamMembers[i],
-                        device != null ? device.getEUI() : "",
-                        alertSubject,
-                        message,
-                        createdAt);
-                sendAlert(
-                        alertType,
-                        teamMembers[i],
-                        device != null ? device.getEUI() : "",
-                        alertSubject,
-                        message,
-                        createdAt);
-            }
-        }
-        if (config.administrators != null && !config.administrators.isEmpty()) {
-            String[] admins = config.administrators.split(",");
-            for (int i = 0; i < admins.length; i++) {
-                if (admins[i].isEmpty()) {
-                    continue;
-                }
-                saveSignal(
-                        -1 * config.alertLevel,
-                        config.id,
-                        config.organizationId,
-                        admins[i],
-                        device != null ? device.getEUI() : "",
-                        alertSubject,
-                        message,
-                        createdAt);
-                sendAlert(
-                    alertType, 
-                    admins[i], 
-                    device!=null ? device.getEUI() : "", 
-                    alertSubject, 
-                    message, 
-                    createdAt);
-            }
-        }
+        notifyRecipients(
+                config,
+                -1 * config.alertLevel,
+                alertType,
+                recipientCache.getRecipients(config, device),
+                device != null ? device.getEUI() : "",
+                alertSubject,
+                message,
+                createdAt);
     }
 
     private void saveEvent(SentinelConfig config, Device device, ConditionResult violationResult) {
@@ -743,83 +690,83 @@ public abstract class EventLogic {
                 e.printStackTrace();
             }
         }
-        String message = transformMessage(getMessageBody(config.alertMessage), config, device, group, violationResult);
-        String alertSubject = transformMessage(getMessageSubject(config.alertMessage), config, device, group,
-                violationResult);
+        MessageTemplates.Message template = messageTemplates.getAlertMessage(config);
+        String[] values = getMessageValues(config, device, group, violationResult);
+        String message = renderMessage(template.body(), values);
+        String alertSubject = renderMessage(template.subject(), values);
 
         String alertType = getAlertType(config.alertLevel);
 
-        try {
-            sentinelDao.addSentinelEvent(
-                    config.id,
-                    device != null ? device.getEUI() : violationResult.eui,
-                    config.alertLevel,
-                    message,
-                    message);
-        } catch (IotDatabaseException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
+        addSentinelEvent(
+                config,
+                device != null ? device.getEUI() : violationResult.eui,
+                config.alertLevel,
+                message);
         // alert won't be sent to its creator (owner) - only to team members and admins
-        String team = transformTeam(config.team, device);
-        if (!team.isEmpty()) {
-            String[] teamMembers = team.split(",");
-            for (int i = 0; i < teamMembers.length; i++) {
-                if (teamMembers[i].isEmpty()) {
-                    continue;
-                }
-                saveSignal(
-                        config.alertLevel,
-                        config.id,
-                        config.organizationId,
-                        teamMembers[i],
-                        device != null ? device.getEUI() : violationResult.eui,
-                        alertSubject,
-                        message,
-                        createdAt);
-                sendAlert(
-                        alertType,
-                        teamMembers[i],
-                        device != null ? device.getEUI() : violationResult.eui,
-                        alertSubject,
-                        message,
-                        createdAt);
-            }
+        notifyRecipients(
+                config,
+                config.alertLevel,
+                alertType,
+                recipientCache.getRecipients(config, device),
+                device != null ? device.getEUI() : violationResult.eui,
+                alertSubject,
+                message,
+                createdAt);
+    }
+
+    /**
+     * Informs the owner of the config that the rule has been quarantined.
+     */
+    void notifyQuarantine(SentinelConfig config, String deviceEui, RuleBudget.Quarantine quarantine) {
+        String[] recipients = { config.userId };
+        String message = "Sentinel " + config.id + " (" + config.name + ") took " + quarantine.cost()
+                + " ms per evaluation and has been suspended. Update the rule or contact the administrator.";
+        notifyRecipients(
+                config,
+                config.alertLevel,
+                "GENERAL",
+                recipients,
+                deviceEui,
+                "rule suspended",
+                message,
+                quarantine.createdAt());
+    }
+
+    /**
+     * Saves signals and sends alerts to the recipients.
+     * The alert payload fields shared by all recipients are joined once.
+     */
+    private void notifyRecipients(SentinelConfig config, int level, String alertType, String[] recipients,
+            String deviceEui, String alertSubject, String message, long createdAt) {
+        if (recipients.length == 0) {
+            return;
         }
-        if (config.administrators != null && !config.administrators.isEmpty()) {
-            String[] admins = config.administrators.split(",");
-            for (int i = 0; i < admins.length; i++) {
-                if (admins[i].isEmpty()) {
-                    continue;
-                }
-                saveSignal(
-                        config.alertLevel,
-                        config.id,
-                        config.organizationId,
-                        admins[i],
-                        device != null ? device.getEUI() : violationResult.eui,
-                        alertSubject,
-                        message,
-                        createdAt);
-                sendAlert(
-                        alertType,
-                        admins[i],
-                        device != null ? device.getEUI() : violationResult.eui,
-                        alertSubject,
-                        message,
-                        createdAt);
+        String alertPayload = "\t" + deviceEui + "\t" + alertType + "\t" + message + "\t" + alertSubject;
+        for (int i = 0; i < recipients.length; i++) {
+            saveSignal(
+                    level,
+                    config.id,
+                    config.organizationId,
+                    recipients[i],
+                    deviceEui,
+                    alertSubject,
+                    message,
+                    createdAt);
+            if (!signalsUsed) {
+                eventSink.addAlert(alertType, deviceEui, recipients[i], message, createdAt);
             }
+            emit(recipients[i] + alertPayload);
         }
+        logger.debug("Alerts sent: " + config.id + " " + deviceEui + " " + alertType + " to "
+                + recipients.length + " recipients");
     }
 
-    abstract ConditionResult runPythonScript(SentinelConfig config, String[] messageArray, int deviceRuleStatus);
-
     abstract ConditionResult runPythonScript(SentinelConfig config, Device device, String jsonString);
 
-    // abstract ConditionResult runPythonScript(SentinelConfig config, Device
-    // device, Map deviceChannelMap,
-    // List<List<LastDataPair>> values);
-
-    abstract void checkSentinelRelatedData(String messageId, SentinelConfig config, Map deviceChannelMap, String eui,
-            String[] messageArray);
+    /**
+     * @return true if the evaluation has been submitted to the evaluation
+     *         pipeline, which then completes the config in the context
+     */
+    abstract boolean checkSentinelRelatedData(EvaluationContext context, SentinelConfig config,
+            Map deviceChannelMap, String eui, DataFrame frame);
 }
@@ -0,0 +1,307 @@
+package com.signomix.sentinel.domain;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import com.signomix.common.db.IotDatabaseException;
+import com.signomix.common.db.IotDatabaseIface;
+import com.signomix.common.db.SentinelDaoIface;
+import com.signomix.common.db.SignalDaoIface;
+import com.signomix.common.iot.sentinel.Signal;
+
+import io.agroal.api.AgroalDataSource;
+import io.quarkus.agroal.DataSource;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * Write-behind sink for sentinel events, signals and alerts.
+ * Rows are put on a bounded queue and written by a single writer thread in
+ * batches of up to signomix.sink.batch.size rows, or after
+ * signomix.sink.flush.interval when fewer rows are waiting. Each flush is one
+ * transaction, so it is committed once. Sentinel events and alerts are written
+ * through the signomix-common DAOs. Signals are written with a JDBC batch
+ * insert when the signals table has the columns of
+ * EventSinkDao.SIGNAL_COLUMNS, checked at startup; otherwise, with an error
+ * logged at startup, through SignalDao, and signal stream events then carry
+ * no signal id. When the queue stays full longer than
+ * signomix.sink.offer.timeout, the row is written by the calling thread, so
+ * memory use is bounded and no row is dropped.
+ * Rows are written after the fact: the rule status table is updated when an
+ * event is queued, and alerts are sent to MQTT by EventLogic before their
+ * rows reach the database. Signals are published to signal stream
+ * subscribers only after their transaction has committed.
+ */
+@ApplicationScoped
+public class EventSink {
+
+    @Inject
+    Logger logger;
+
+    @Inject
+    @DataSource("oltp")
+    AgroalDataSource tsDs;
+
+    @Inject
+    RuleStatusTable ruleStatusTable;
+
+    @Inject
+    SentinelMetrics metrics;
+
+    @Inject
+    SignalStream signalStream;
+
+    @ConfigProperty(name = "signomix.sink.queue.size", defaultValue = "10000")
+    int queueSize;
+
+    @ConfigProperty(name = "signomix.sink.batch.size", defaultValue = "500")
+    int batchSize;
+
+    @ConfigProperty(name = "signomix.sink.flush.interval", defaultValue = "1000")
+    long flushInterval;
+
+    @ConfigProperty(name = "signomix.sink.offer.timeout", defaultValue = "100")
+    long offerTimeout;
+
+    SentinelDaoIface sentinelDao;
+    SignalDaoIface signalDao;
+    IotDatabaseIface oltpDao;
+    EventSinkDao eventSinkDao;
+    // true if signals can be written with EventSinkDao
+    boolean batchSignals;
+
+    private ArrayBlockingQueue<Row> queue;
+    private Thread writer;
+    private volatile boolean running;
+
+    private interface Row {
+    }
+
+    private record SentinelEventRow(long configId, String eui, int level, String message) implements Row {
+    }
+
+    private record SignalRow(Signal signal) implements Row {
+    }
+
+    private record AlertRow(String type, String deviceEui, String userId, String message, long createdAt)
+            implements Row {
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        sentinelDao = new com.signomix.common.tsdb.SentinelDao();
+        sentinelDao.setDatasource(tsDs);
+        signalDao = new com.signomix.common.tsdb.SignalDao();
+        signalDao.setDatasource(tsDs);
+        oltpDao = new com.signomix.common.tsdb.IotDatabaseDao();
+        oltpDao.setDatasource(tsDs);
+        eventSinkDao = new EventSinkDao();
+        try {
+            List<String> missing = TableColumns.missing(tsDs, "signals", EventSinkDao.SIGNAL_COLUMNS);
+            batchSignals = missing.isEmpty();
+            if (!batchSignals) {
+                logger.error("signals table has no columns " + missing
+                        + ", signals are written one by one through SignalDao and streamed without ids");
+            }
+        } catch (SQLException e) {
+            logger.error("signals table not checked, signals are written through SignalDao: " + e.getMessage());
+        }
+        queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        running = true;
+        writer = new Thread(this::writeLoop, "sentinel-event-sink");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(flushInterval * 5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // write rows left by the writer
+        ArrayList<Row> rows = new ArrayList<>();
+        queue.drainTo(rows);
+        write(rows);
+    }
+
+    /**
+     * Queues the sentinel event. The rule status table is updated at once,
+     * before the event is written, because the next frame of the device may be
+     * evaluated before the flush; if the write fails, the table entry is
+     * invalidated and the status is read from the database again.
+     *
+     * @param configId the config id
+     * @param eui      the device EUI
+     * @param level    the event level (negative for reset events)
+     * @param message  the event message
+     */
+    public void addSentinelEvent(long configId, String eui, int level, String message) {
+        ruleStatusTable.put(configId, eui, level);
+        add(new SentinelEventRow(configId, eui, level, message));
+    }
+
+    /**
+     * Queues the signal.
+     *
+     * @param signal the signal to save
+     */
+    public void saveSignal(Signal signal) {
+        add(new SignalRow(signal));
+    }
+
+    /**
+     * Queues the alert.
+     */
+    public void addAlert(String alertType, String deviceEui, String userId, String message, long createdAt) {
+        add(new AlertRow(alertType, deviceEui, userId, message, createdAt));
+    }
+
+    /**
+     * @return number of rows waiting to be written
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void add(Row row) {
+        boolean queued = false;
+        if (running) {
+            try {
+                queued = queue.offer(row, offerTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!queued) {
+            logger.debug("Event sink queue full, writing on the calling thread");
+            write(List.of(row));
+        }
+    }
+
+    private void writeLoop() {
+        int size = Math.max(1, batchSize);
+        ArrayList<Row> batch = new ArrayList<>(size);
+        while (running) {
+            try {
+                Row first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long flushAt = System.currentTimeMillis() + flushInterval;
+                // collect rows until the batch is full or the flush interval passes
+                while (batch.size() < size) {
+                    queue.drainTo(batch, size - batch.size());
+                    long wait = flushAt - System.currentTimeMillis();
+                    if (batch.size() >= size || wait <= 0) {
+                        break;
+                    }
+                    Row next = queue.poll(wait, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writes the rows in one transaction. When it fails, the rows are written
+     * one by one, so a bad row does not take the rest of the flush with it.
+     */
+    private void write(List<Row> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            writeTransaction(rows);
+            written(rows);
+        } catch (Exception e) {
+            if (rows.size() == 1) {
+                failed(rows.get(0), e);
+            } else {
+                logger.warn("Event sink batch of " + rows.size() + " rows failed, writing rows one by one: "
+                        + e.getMessage());
+                for (Row row : rows) {
+                    try {
+                        writeTransaction(List.of(row));
+                        written(List.of(row));
+                    } catch (Exception rowException) {
+                        failed(row, rowException);
+                    }
+                }
+            }
+        }
+        long time = System.nanoTime() - start;
+        metrics.record(SentinelMetrics.Stage.PERSISTENCE, time);
+        logger.debug("Event sink batch written: " + rows.size() + " rows in " + time / 1_000_000 + " ms");
+    }
+
+    private void writeTransaction(List<Row> rows) {
+        QuarkusTransaction.requiringNew().run(() -> {
+            ArrayList<Signal> signals = new ArrayList<>();
+            try {
+                for (Row row : rows) {
+                    if (row instanceof SentinelEventRow event) {
+                        sentinelDao.addSentinelEvent(event.configId(), event.eui(), event.level(),
+                                event.message(), event.message());
+                    } else if (row instanceof SignalRow signal) {
+                        if (batchSignals) {
+                            signals.add(signal.signal());
+                        } else {
+                            signalDao.saveSignal(signal.signal());
+                        }
+                    } else if (row instanceof AlertRow alert) {
+                        oltpDao.addAlert(alert.type(), alert.deviceEui(), alert.userId(), alert.message(),
+                                alert.createdAt());
+                    }
+                }
+                if (!signals.isEmpty()) {
+                    try (Connection conn = tsDs.getConnection()) {
+                        eventSinkDao.insertSignals(conn, signals);
+                    }
+                }
+            } catch (IotDatabaseException | SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private void written(List<Row> rows) {
+        for (Row row : rows) {
+            if (row instanceof SignalRow signal) {
+                signalStream.publish(signal.signal());
+            }
+        }
+    }
+
+    private void failed(Row row, Exception e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        logger.error("Error while writing " + row.getClass().getSimpleName() + ": " + cause.getMessage());
+        if (row instanceof SentinelEventRow event) {
+            // the status will be read from the database on next use
+            ruleStatusTable.invalidate(event.configId(), event.eui());
+        }
+    }
+
+}
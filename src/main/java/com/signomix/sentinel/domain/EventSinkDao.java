@@ -0,0 +1,69 @@
+package com.signomix.sentinel.domain;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+import com.signomix.common.iot.sentinel.Signal;
+
+/**
+ * Batch insert of the signals written by EventSink.
+ * The method takes the connection of the flush, so all signals of a flush are
+ * written in the transaction the caller has started. The signals table is
+ * created by signomix-common; EventSink uses this insert only when the table
+ * has all of {@link #SIGNAL_COLUMNS} (see TableColumns), otherwise it writes
+ * through SignalDao.
+ */
+public class EventSinkDao {
+
+    /**
+     * Columns of the signals table used by the insert.
+     */
+    public static final String[] SIGNAL_COLUMNS = { "id", "created_at", "user_id", "organization_id",
+            "sentinel_config_id", "device_eui", "level", "subject_en", "subject_pl", "message_en", "message_pl" };
+
+    private static final String INSERT_SIGNAL = "INSERT INTO signals (created_at,user_id,organization_id,"
+            + "sentinel_config_id,device_eui,level,subject_en,subject_pl,message_en,message_pl) "
+            + "VALUES (?,?,?,?,?,?,?,?,?,?)";
+
+    /**
+     * Inserts the signals in one batch and sets their ids and creation times.
+     *
+     * @param conn    the connection of the flush
+     * @param signals the signals
+     * @throws SQLException
+     */
+    public void insertSignals(Connection conn, List<Signal> signals) throws SQLException {
+        if (signals.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(INSERT_SIGNAL, new String[] { "id" })) {
+            for (Signal signal : signals) {
+                if (signal.createdAt == null) {
+                    signal.createdAt = new Timestamp(System.currentTimeMillis());
+                }
+                pstmt.setTimestamp(1, signal.createdAt);
+                pstmt.setString(2, signal.userId);
+                pstmt.setLong(3, signal.organizationId);
+                pstmt.setLong(4, signal.sentinelConfigId);
+                pstmt.setString(5, signal.deviceEui);
+                pstmt.setInt(6, signal.level);
+                pstmt.setString(7, signal.subjectEn);
+                pstmt.setString(8, signal.subjectPl);
+                pstmt.setString(9, signal.messageEn);
+                pstmt.setString(10, signal.messagePl);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                for (int i = 0; i < signals.size() && keys.next(); i++) {
+                    signals.get(i).id = keys.getLong(1);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.signomix.sentinel.domain;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import com.signomix.common.User;
+import com.signomix.common.iot.sentinel.Signal;
+
+import io.agroal.api.AgroalDataSource;
+import io.quarkus.agroal.DataSource;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Multi;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * Streams complete histories of signals and sentinel events.
+ * Every export reads from its own server-side cursor and rows are fetched
+ * only when the client is ready to receive them, so memory use does not
+ * depend on the export size.
+ */
+@ApplicationScoped
+public class ExportLogic {
+
+    @Inject
+    Logger logger;
+
+    @Inject
+    @DataSource("oltp")
+    AgroalDataSource tsDs;
+
+    @ConfigProperty(name = "signomix.export.fetch.size", defaultValue = "1000")
+    int fetchSize;
+
+    SignalQueryDao signalQueryDao;
+    SentinelEventQueryDao sentinelEventQueryDao;
+
+    void onStart(@Observes StartupEvent ev) {
+        signalQueryDao = new SignalQueryDao();
+        signalQueryDao.setDatasource(tsDs);
+        sentinelEventQueryDao = new SentinelEventQueryDao();
+        sentinelEventQueryDao.setDatasource(tsDs);
+        try {
+            List<String> missing = signalQueryDao.checkColumns();
+            if (!missing.isEmpty()) {
+                logger.error("signals table has no columns " + missing + ", signal export is disabled");
+            }
+            missing = sentinelEventQueryDao.checkColumns();
+            if (!missing.isEmpty()) {
+                logger.error("sentinel_events table has no columns " + missing + ", event export is disabled");
+            }
+        } catch (SQLException e) {
+            logger.error("Export tables not checked: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Streams the user signals, newest first.
+     *
+     * @param user             the user
+     * @param deviceEui        device EUI filter or null
+     * @param level            level filter or null
+     * @param sentinelConfigId sentinel config filter or null
+     * @param from             minimum creation time (epoch ms, inclusive) or null
+     * @param to               maximum creation time (epoch ms, exclusive) or null
+     * @return the signals
+     */
+    public Multi<Signal> exportSignals(User user, String deviceEui, Integer level, Long sentinelConfigId,
+            Long from, Long to) {
+        SignalQueryDao.Filter filter = new SignalQueryDao.Filter(
+                deviceEui == null || deviceEui.isEmpty() ? null : deviceEui,
+                level,
+                sentinelConfigId,
+                from == null ? null : new Timestamp(from),
+                to == null ? null : new Timestamp(to));
+        return RowCursor.stream(() -> signalQueryDao.openUserSignals(user.uid, filter, fetchSize))
+                .onFailure().invoke(e -> logger.error("Export of signals failed for " + user.uid, e));
+    }
+
+    /**
+     * Streams the events of the sentinel config, oldest first.
+     * Access to the config must be checked by the caller.
+     *
+     * @param configId the sentinel config id
+     * @return the events as column values by column name
+     */
+    public Multi<Map<String, Object>> exportEvents(long configId) {
+        return RowCursor.stream(() -> sentinelEventQueryDao.openEvents(configId, fetchSize))
+                .onFailure().invoke(e -> logger.error("Export of events failed for sentinel " + configId, e));
+    }
+
+}
@@ -0,0 +1,229 @@
+package com.signomix.sentinel.domain;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * Coalesces bursts of frames from one device.
+ * The first frame for a device and rule opens a window of
+ * signomix.coalesce.window ms. Frames received within the window supersede
+ * the held frame, and the rule is evaluated once, when the window closes.
+ * Minimum, maximum and latest value of every measurement are kept, so a
+ * threshold rule (see CompiledRule.isExtremeReducible()) can be checked
+ * against the values which would have violated it in any of the frames.
+ * Rules with everyTime set are not coalesced.
+ * Closed batches are handed to a separate flush thread, so the scheduler
+ * keeps closing windows on time while a flush waits for room in the
+ * evaluation pipeline. Flushes run in the order the windows closed.
+ */
+@ApplicationScoped
+public class FrameCoalescer {
+
+    @Inject
+    Logger logger;
+
+    @Inject
+    EvaluationTracker evaluationTracker;
+
+    @ConfigProperty(name = "signomix.coalesce.window", defaultValue = "0")
+    long window;
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService flushExecutor;
+
+    private final ConcurrentHashMap<Key, Batch> batches = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder();
+
+    private record Key(String deviceEui, long configId) {
+    }
+
+    /**
+     * Frames of one device received within the window.
+     */
+    public static final class Batch {
+        private EvaluationContext context;
+        private DataFrame frame;
+        private String[] names;
+        private double[] min;
+        private double[] max;
+        private double[] last;
+        private int count;
+        private int size;
+
+        Batch(EvaluationContext context, DataFrame frame) {
+            int capacity = Math.max(1, frame.getCount());
+            names = new String[capacity];
+            min = new double[capacity];
+            max = new double[capacity];
+            last = new double[capacity];
+            add(context, frame);
+        }
+
+        void add(EvaluationContext newContext, DataFrame newFrame) {
+            context = newContext;
+            frame = newFrame;
+            size++;
+            String[] frameNames = newFrame.getNames();
+            double[] frameValues = newFrame.getValues();
+            for (int i = 0; i < newFrame.getCount(); i++) {
+                int slot = indexOf(frameNames[i]);
+                if (slot < 0) {
+                    if (count == names.length) {
+                        names = Arrays.copyOf(names, count * 2);
+                        min = Arrays.copyOf(min, count * 2);
+                        max = Arrays.copyOf(max, count * 2);
+                        last = Arrays.copyOf(last, count * 2);
+                    }
+                    names[count] = frameNames[i];
+                    min[count] = frameValues[i];
+                    max[count] = frameValues[i];
+                    last[count] = frameValues[i];
+                    count++;
+                } else {
+                    min[slot] = Math.min(min[slot], frameValues[i]);
+                    max[slot] = Math.max(max[slot], frameValues[i]);
+                    last[slot] = frameValues[i];
+                }
+            }
+        }
+
+        private int indexOf(String name) {
+            for (int i = 0; i < count; i++) {
+                if (names[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the evaluation context of the latest frame
+         */
+        public EvaluationContext getContext() {
+            return context;
+        }
+
+        /**
+         * @return number of frames in the batch
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the frame to evaluate the rule against, or the latest frame
+         * when the rule cannot be checked against extremes. The frame has the
+         * header of the latest frame and every measurement received within the
+         * window, also those missing in the latest frame: measurements checked
+         * by the rule have their extreme value, the others their latest value.
+         *
+         * @param rule the compiled threshold rule or null for script rules
+         * @return the frame
+         */
+        public DataFrame getFrame(CompiledRule rule) {
+            if (size == 1 || rule == null || !rule.isExtremeReducible()) {
+                return frame;
+            }
+            String[] frameNames = Arrays.copyOf(names, count);
+            double[] values = Arrays.copyOf(last, count);
+            for (int i = 0; i < count; i++) {
+                int extreme = rule.getExtreme(names[i]);
+                if (extreme != 0) {
+                    values[i] = extreme > 0 ? max[i] : min[i];
+                }
+            }
+            return frame.withMeasurements(frameNames, values, count);
+        }
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        if (window > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "sentinel-coalescer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flushExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "sentinel-coalescer-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            logger.info("Frame coalescing enabled, window " + window + " ms");
+        }
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            flushExecutor.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return scheduler != null;
+    }
+
+    /**
+     * Adds the frame to the batch of the device and rule. When the frame opens
+     * a new batch, the flush is called with the batch after the window. When a
+     * batch is already open, the frame supersedes the held one and the rule of
+     * the previous frame's context is completed.
+     *
+     * @param context the evaluation context of the frame
+     * @param configId the config id
+     * @param frame   the frame
+     * @param flush   called with the batch when the window closes
+     */
+    public void offer(EvaluationContext context, long configId, DataFrame frame, Consumer<Batch> flush) {
+        Key key = new Key(frame.getEui(), configId);
+        EvaluationContext[] superseded = new EvaluationContext[1];
+        Batch batch = batches.compute(key, (k, current) -> {
+            if (current == null) {
+                return new Batch(context, frame);
+            }
+            superseded[0] = current.context;
+            current.add(context, frame);
+            return current;
+        });
+        if (superseded[0] != null) {
+            coalesced.increment();
+            evaluationTracker.complete(superseded[0], configId);
+            return;
+        }
+        scheduler.schedule(() -> {
+            // no frame is added after the batch is removed
+            batches.remove(key, batch);
+            flushExecutor.execute(() -> flush.accept(batch));
+        }, window, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return number of frames superseded by later frames
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return number of open batches
+     */
+    public int getPendingCount() {
+        return batches.size();
+    }
+
+}
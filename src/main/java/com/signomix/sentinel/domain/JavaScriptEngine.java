@@ -0,0 +1,304 @@
+package com.signomix.sentinel.domain;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.HostAccess;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyExecutable;
+import org.graalvm.polyglot.proxy.ProxyObject;
+import org.jboss.logging.Logger;
+
+import com.signomix.common.iot.sentinel.SentinelConfig;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * Runs sentinel rules written in JavaScript.
+ * A script is treated as JavaScript when its first line is
+ * {@value #LANGUAGE_MARKER}. All contexts share one polyglot Engine, so code
+ * parsed and compiled for a Source is reused by every thread. Each thread keeps
+ * its own Context, created on first use. Functions of invalidated configs are
+ * evicted from a thread's Context the next time the thread runs a script, and
+ * all Contexts are closed on shutdown.
+ * The helper functions follow the Python prelude contract: checkRule() returns
+ * conditionsMet(measurement, value), conditionsMetWithCommand(...),
+ * conditionsNotMet() or scriptError(message).
+ * A run taking longer than the timeout is interrupted by a watchdog thread.
+ * Contexts use HostAccess.EXPLICIT: scripts get no Java objects, only
+ * read-only proxies of the config fields, the measurement values and a
+ * logger, so they cannot reach host classes through them.
+ */
+@ApplicationScoped
+public class JavaScriptEngine {
+
+    public static final String LANGUAGE_MARKER = "//javascript";
+
+    private static final String LANGUAGE = "js";
+
+    private static final String PRELUDE = """
+            (function(config, values, deviceEUI, deviceStatus, javaLogger) {
+                var hysteresis = Math.abs(config.hysteresis) * (deviceStatus > 0 ? -1 : 1);
+                function getValue(measurement) {
+                    var value = values[measurement];
+                    return value === undefined ? null : value;
+                }
+                var valuesMap = { get: getValue };
+                function conditionsMetWithCommand(measurement, value, commandTarget, command) {
+                    return deviceEUI + ";" + measurement + ";" + value + ";" + commandTarget + ";" + command;
+                }
+                function conditionsMet(measurement, value) {
+                    return deviceEUI + ";" + measurement + ";" + value;
+                }
+                function conditionsNotMet() {
+                    return "";
+                }
+                function scriptError(message) {
+                    javaLogger.warn("Script error: " + message);
+                    return message;
+                }
+            """;
+
+    private static final String POSTLUDE = """
+
+                try {
+                    return String(checkRule());
+                } catch (e) {
+                    return scriptError("Error in checkRule: " + e);
+                }
+            })
+            """;
+
+    @Inject
+    Logger logger;
+
+    @ConfigProperty(name = "signomix.rule.timeout", defaultValue = "2000")
+    long timeout;
+
+    private Engine engine;
+    private ScheduledExecutorService watchdog;
+    private ProxyObject scriptLogger;
+
+    // sources by config id, shared by all contexts
+    private final ConcurrentHashMap<Long, CachedSource> sources = new ConcurrentHashMap<>();
+
+    // incremented on every invalidation, tells threads to evict stale functions
+    private final AtomicLong generation = new AtomicLong();
+
+    private final ThreadLocal<ThreadContext> contexts = new ThreadLocal<>();
+    private final Set<ThreadContext> allContexts = ConcurrentHashMap.newKeySet();
+
+    private record CachedSource(String script, Source source) {
+    }
+
+    private static final class ThreadContext {
+        final Context context;
+        // rule functions evaluated in this context by config id
+        final HashMap<Long, CachedFunction> functions = new HashMap<>();
+        long generation;
+
+        ThreadContext(Context context) {
+            this.context = context;
+        }
+    }
+
+    private record CachedFunction(Source source, Value function, SentinelConfig config, ProxyObject configProxy) {
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        engine = Engine.newBuilder()
+                .option("engine.WarnInterpreterOnly", "false")
+                .build();
+        scriptLogger = ProxyObject.fromMap(Map.of(
+                "debug", logFunction(Logger.Level.DEBUG),
+                "info", logFunction(Logger.Level.INFO),
+                "warn", logFunction(Logger.Level.WARN),
+                "error", logFunction(Logger.Level.ERROR)));
+        if (timeout > 0) {
+            watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "sentinel-script-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+        for (ThreadContext threadContext : allContexts) {
+            try {
+                threadContext.context.close(true);
+            } catch (Exception e) {
+                logger.warn("JavaScript context not closed: " + e.getMessage());
+            }
+        }
+        allContexts.clear();
+        if (engine != null) {
+            engine.close(true);
+        }
+    }
+
+    /**
+     * @param script the config script
+     * @return true if the script is written in JavaScript
+     */
+    public static boolean isJavaScript(String script) {
+        return script != null && script.stripLeading().regionMatches(true, 0, LANGUAGE_MARKER, 0,
+                LANGUAGE_MARKER.length());
+    }
+
+    /**
+     * Runs checkRule() defined by the config script.
+     *
+     * @param config       the sentinel config
+     * @param values       measurement values by name, not modified
+     * @param eui          the device EUI
+     * @param deviceStatus status of the device before processing the current
+     *                     event
+     * @return the script result
+     * @throws ScriptTimeoutException if the run takes longer than the timeout
+     */
+    public String run(SentinelConfig config, Map<String, Double> values, String eui, int deviceStatus) {
+        ThreadContext threadContext = getThreadContext();
+        CachedFunction function = getFunction(threadContext, config);
+        ScheduledFuture<?> interruption = null;
+        if (watchdog != null) {
+            interruption = watchdog.schedule(() -> interrupt(threadContext.context, config.id), timeout,
+                    TimeUnit.MILLISECONDS);
+        }
+        try {
+            Value result = function.function().execute(function.configProxy(),
+                    ProxyObject.fromMap(Collections.unmodifiableMap(values)), eui, deviceStatus, scriptLogger);
+            return result.isString() ? result.asString() : result.toString();
+        } catch (PolyglotException e) {
+            if (e.isInterrupted()) {
+                throw new ScriptTimeoutException(config.id, timeout);
+            }
+            throw e;
+        } finally {
+            if (interruption != null) {
+                interruption.cancel(false);
+            }
+        }
+    }
+
+    private void interrupt(Context context, long configId) {
+        try {
+            context.interrupt(Duration.ofMillis(timeout));
+        } catch (TimeoutException e) {
+            logger.warn("JavaScript of sentinel " + configId + " not interrupted in " + timeout + " ms");
+        }
+    }
+
+    /**
+     * Removes the cached source of the config.
+     *
+     * @param configId the config id
+     */
+    public void invalidate(long configId) {
+        sources.remove(configId);
+        generation.incrementAndGet();
+    }
+
+    private ThreadContext getThreadContext() {
+        ThreadContext threadContext = contexts.get();
+        if (threadContext == null) {
+            threadContext = new ThreadContext(Context.newBuilder(LANGUAGE)
+                    .engine(engine)
+                    .allowHostAccess(HostAccess.EXPLICIT)
+                    .build());
+            threadContext.generation = generation.get();
+            contexts.set(threadContext);
+            allContexts.add(threadContext);
+        }
+        return threadContext;
+    }
+
+    private CachedFunction getFunction(ThreadContext threadContext, SentinelConfig config) {
+        long current = generation.get();
+        if (threadContext.generation != current) {
+            threadContext.functions.entrySet().removeIf(entry -> {
+                CachedSource cached = sources.get(entry.getKey());
+                return cached == null || cached.source() != entry.getValue().source();
+            });
+            threadContext.generation = current;
+        }
+        Source source = getSource(config);
+        CachedFunction function = threadContext.functions.get(config.id);
+        if (function == null || function.source() != source) {
+            function = new CachedFunction(source, threadContext.context.eval(source), config, configProxy(config));
+            threadContext.functions.put(config.id, function);
+        } else if (function.config() != config) {
+            function = new CachedFunction(source, function.function(), config, configProxy(config));
+            threadContext.functions.put(config.id, function);
+        }
+        return function;
+    }
+
+    /**
+     * @return config fields readable by scripts
+     */
+    private static ProxyObject configProxy(SentinelConfig config) {
+        HashMap<String, Object> fields = new HashMap<>();
+        fields.put("id", config.id);
+        fields.put("name", config.name);
+        fields.put("userId", config.userId);
+        fields.put("organizationId", config.organizationId);
+        fields.put("deviceEui", config.deviceEui);
+        fields.put("groupEui", config.groupEui);
+        fields.put("tagName", config.tagName);
+        fields.put("tagValue", config.tagValue);
+        fields.put("active", config.active);
+        fields.put("eventType", config.eventType);
+        fields.put("alertLevel", config.alertLevel);
+        fields.put("alertMessage", config.alertMessage);
+        fields.put("conditionOk", config.conditionOk);
+        fields.put("conditionOkMessage", config.conditionOkMessage);
+        fields.put("everyTime", config.everyTime);
+        fields.put("hysteresis", config.hysteresis);
+        fields.put("team", config.team);
+        fields.put("administrators", config.administrators);
+        return ProxyObject.fromMap(Collections.unmodifiableMap(fields));
+    }
+
+    private ProxyExecutable logFunction(Logger.Level level) {
+        return arguments -> {
+            logger.log(level, arguments.length > 0 ? arguments[0].toString() : "");
+            return null;
+        };
+    }
+
+    private Source getSource(SentinelConfig config) {
+        CachedSource cached = sources.get(config.id);
+        if (cached == null || !cached.script().equals(config.script)) {
+            logger.debug("Compiling JavaScript for sentinel: " + config.id);
+            Source source = Source.newBuilder(LANGUAGE, PRELUDE + config.script + POSTLUDE,
+                    "sentinel-" + config.id + ".js").buildLiteral();
+            cached = new CachedSource(config.script, source);
+            sources.put(config.id, cached);
+        }
+        return cached.source();
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.signomix.sentinel.domain;
+
+import java.util.ArrayList;
+
+/**
+ * Alert message template.
+ * The message text is split once into literal parts and variables
+ * ({device.eui}, {value}, ...), so rendering is a single pass over the parts.
+ * A variable without a value is rendered as written in the template.
+ */
+public final class MessageTemplate {
+
+    public enum Variable {
+        TARGET_EUI("{target.eui}"),
+        TARGET_NAME("{target.name}"),
+        TAG_NAME("{tag.name}"),
+        TAG_VALUE("{tag.value}"),
+        DEVICE_EUI("{device.eui}"),
+        DEVICE_NAME("{device.name}"),
+        MEASUREMENT("{measurement}"),
+        VAR("{var}"),
+        VALUE("{value}");
+
+        private static final Variable[] ALL = values();
+
+        final String placeholder;
+
+        Variable(String placeholder) {
+            this.placeholder = placeholder;
+        }
+
+        static Variable at(String text, int index) {
+            for (int i = 0; i < ALL.length; i++) {
+                if (text.startsWith(ALL[i].placeholder, index)) {
+                    return ALL[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    /** Number of variables, the size of the values array passed to render(). */
+    public static final int VARIABLE_COUNT = Variable.ALL.length;
+
+    private static final MessageTemplate EMPTY = new MessageTemplate(new Object[0]);
+
+    // String (literal) or Variable
+    private final Object[] parts;
+
+    private MessageTemplate(Object[] parts) {
+        this.parts = parts;
+    }
+
+    /**
+     * Parses the template text.
+     *
+     * @param text the template text (may be null)
+     * @return the template
+     */
+    public static MessageTemplate parse(String text) {
+        if (text == null || text.isEmpty()) {
+            return EMPTY;
+        }
+        ArrayList<Object> parts = new ArrayList<>();
+        int literalStart = 0;
+        int index = text.indexOf('{');
+        while (index >= 0) {
+            Variable variable = Variable.at(text, index);
+            if (variable != null) {
+                if (index > literalStart) {
+                    parts.add(text.substring(literalStart, index));
+                }
+                parts.add(variable);
+                literalStart = index + variable.placeholder.length();
+                index = text.indexOf('{', literalStart);
+            } else {
+                index = text.indexOf('{', index + 1);
+            }
+        }
+        if (literalStart < text.length()) {
+            parts.add(text.substring(literalStart));
+        }
+        return new MessageTemplate(parts.toArray());
+    }
+
+    /**
+     * Appends the rendered message to the builder.
+     *
+     * @param sb     the builder
+     * @param values variable values indexed by Variable.ordinal()
+     */
+    public void render(StringBuilder sb, String[] values) {
+        Object part;
+        String value;
+        for (int i = 0; i < parts.length; i++) {
+            part = parts[i];
+            if (part instanceof Variable) {
+                value = values[((Variable) part).ordinal()];
+                sb.append(value != null ? value : ((Variable) part).placeholder);
+            } else {
+                sb.append((String) part);
+            }
+        }
+    }
+
+}
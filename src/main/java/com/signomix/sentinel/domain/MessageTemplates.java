@@ -0,0 +1,88 @@
+package com.signomix.sentinel.domain;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.signomix.common.iot.sentinel.SentinelConfig;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Parsed alert and condition OK messages of sentinel configs.
+ * Messages are split into subject and body at {info} and parsed once per
+ * message text; a changed config text is parsed again on next use.
+ */
+@ApplicationScoped
+public class MessageTemplates {
+
+    private static final String INFO = "{info}";
+
+    // templates by config id
+    private final ConcurrentHashMap<Long, ConfigTemplates> templates = new ConcurrentHashMap<>();
+
+    /**
+     * Subject and body templates of a message.
+     */
+    public record Message(String source, MessageTemplate subject, MessageTemplate body) {
+
+        static Message parse(String source) {
+            String text = source == null ? "" : source;
+            int idx = text.indexOf(INFO);
+            if (idx < 0) {
+                return new Message(source, MessageTemplate.parse(""), MessageTemplate.parse(text));
+            }
+            return new Message(source, MessageTemplate.parse(text.substring(0, idx)),
+                    MessageTemplate.parse(text.substring(idx + INFO.length())));
+        }
+
+        boolean isParsedFrom(String text) {
+            return source == null ? text == null : source.equals(text);
+        }
+    }
+
+    private record ConfigTemplates(Message alert, Message conditionOk) {
+    }
+
+    /**
+     * @param config the sentinel config
+     * @return templates of config.alertMessage
+     */
+    public Message getAlertMessage(SentinelConfig config) {
+        ConfigTemplates cached = templates.get(config.id);
+        if (cached != null && cached.alert().isParsedFrom(config.alertMessage)) {
+            return cached.alert();
+        }
+        Message alert = Message.parse(config.alertMessage);
+        Message conditionOk = cached != null && cached.conditionOk().isParsedFrom(config.conditionOkMessage)
+                ? cached.conditionOk()
+                : Message.parse(config.conditionOkMessage);
+        templates.put(config.id, new ConfigTemplates(alert, conditionOk));
+        return alert;
+    }
+
+    /**
+     * @param config the sentinel config
+     * @return templates of config.conditionOkMessage
+     */
+    public Message getConditionOkMessage(SentinelConfig config) {
+        ConfigTemplates cached = templates.get(config.id);
+        if (cached != null && cached.conditionOk().isParsedFrom(config.conditionOkMessage)) {
+            return cached.conditionOk();
+        }
+        Message conditionOk = Message.parse(config.conditionOkMessage);
+        Message alert = cached != null && cached.alert().isParsedFrom(config.alertMessage)
+                ? cached.alert()
+                : Message.parse(config.alertMessage);
+        templates.put(config.id, new ConfigTemplates(alert, conditionOk));
+        return conditionOk;
+    }
+
+    /**
+     * Removes templates of the config.
+     *
+     * @param configId the config id
+     */
+    public void invalidate(long configId) {
+        templates.remove(configId);
+    }
+
+}
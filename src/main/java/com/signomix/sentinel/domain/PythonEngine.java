@@ -0,0 +1,203 @@
+package com.signomix.sentinel.domain;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.python.core.Py;
+import org.python.core.PyCode;
+import org.python.core.PyException;
+import org.python.core.PyFrame;
+import org.python.core.PyObject;
+import org.python.core.PyStringMap;
+import org.python.core.ThreadState;
+import org.python.core.TraceFunction;
+import org.python.util.PythonInterpreter;
+
+import com.signomix.common.iot.sentinel.SentinelConfig;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * Runs sentinel Python scripts on a pool of warm Jython interpreters.
+ * The helper prelude and the script of each config are compiled once; every
+ * run executes the compiled code in a fresh namespace, so runs do not share
+ * variables.
+ * Jython does not react to thread interruption, so the run timeout is checked
+ * by a trace function called on every line and function call of the script.
+ */
+@ApplicationScoped
+public class PythonEngine {
+
+    @Inject
+    Logger logger;
+
+    @ConfigProperty(name = "signomix.python.pool.size", defaultValue = "20")
+    int poolSize;
+
+    @ConfigProperty(name = "signomix.rule.timeout", defaultValue = "2000")
+    long timeout;
+
+    private ArrayBlockingQueue<PythonInterpreter> pool;
+
+    // compiled preludes by source
+    private final ConcurrentHashMap<String, PyCode> preludes = new ConcurrentHashMap<>();
+    // compiled scripts by config id
+    private final ConcurrentHashMap<Long, CompiledScript> scripts = new ConcurrentHashMap<>();
+
+    private record CompiledScript(String source, PyCode code) {
+    }
+
+    /**
+     * Raises a Python exception on every traced event after the deadline, so
+     * the script cannot continue even if it catches the exception.
+     */
+    private static final class Deadline extends TraceFunction {
+        final long deadline;
+        boolean expired;
+
+        Deadline(long deadline) {
+            this.deadline = deadline;
+        }
+
+        @Override
+        public TraceFunction traceCall(PyFrame frame) {
+            check();
+            return this;
+        }
+
+        @Override
+        public TraceFunction traceReturn(PyFrame frame, PyObject ret) {
+            return this;
+        }
+
+        @Override
+        public TraceFunction traceLine(PyFrame frame, int line) {
+            check();
+            return this;
+        }
+
+        @Override
+        public TraceFunction traceException(PyFrame frame, PyException exc) {
+            return this;
+        }
+
+        private void check() {
+            if (expired || System.nanoTime() - deadline > 0) {
+                expired = true;
+                throw Py.RuntimeError("script timeout");
+            }
+        }
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        pool = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        PythonInterpreter interpreter;
+        while ((interpreter = pool.poll()) != null) {
+            interpreter.close();
+        }
+    }
+
+    /**
+     * Runs the config script.
+     * The prelude and the script are executed in a new namespace with the given
+     * bindings, then the prelude function is called with the arguments.
+     *
+     * @param prelude  helper functions (Python source) defining the function
+     * @param config   the sentinel config with the script to run
+     * @param bindings variables to set before executing the code
+     * @param function name of the function to call
+     * @param args     function arguments
+     * @return the function result
+     * @throws ScriptTimeoutException if the run takes longer than the timeout
+     */
+    public PyObject run(String prelude, SentinelConfig config, Map<String, Object> bindings, String function,
+            Object... args) {
+        PythonInterpreter interpreter = borrow();
+        ThreadState threadState = Py.getThreadState();
+        Deadline deadline = null;
+        try {
+            PyCode preludeCode = getPrelude(interpreter, prelude);
+            PyCode scriptCode = getScript(interpreter, config);
+            // compilation is not counted in the run time
+            if (timeout > 0) {
+                deadline = new Deadline(System.nanoTime() + timeout * 1_000_000);
+                threadState.tracefunc = deadline;
+            }
+            interpreter.setLocals(new PyStringMap());
+            for (Map.Entry<String, Object> entry : bindings.entrySet()) {
+                interpreter.set(entry.getKey(), entry.getValue());
+            }
+            interpreter.exec(preludeCode);
+            interpreter.exec(scriptCode);
+            PyObject[] pyArgs = new PyObject[args.length];
+            for (int i = 0; i < args.length; i++) {
+                pyArgs[i] = Py.java2py(args[i]);
+            }
+            return interpreter.get(function).__call__(pyArgs);
+        } catch (PyException e) {
+            if (deadline != null && deadline.expired) {
+                throw new ScriptTimeoutException(config.id, timeout);
+            }
+            throw e;
+        } finally {
+            threadState.tracefunc = null;
+            release(interpreter);
+        }
+    }
+
+    /**
+     * Removes the compiled script of the config.
+     *
+     * @param configId the config id
+     */
+    public void invalidate(long configId) {
+        scripts.remove(configId);
+    }
+
+    private PyCode getPrelude(PythonInterpreter interpreter, String prelude) {
+        PyCode code = preludes.get(prelude);
+        if (code == null) {
+            code = interpreter.compile(prelude, "<prelude>");
+            preludes.put(prelude, code);
+        }
+        return code;
+    }
+
+    private PyCode getScript(PythonInterpreter interpreter, SentinelConfig config) {
+        CompiledScript script = scripts.get(config.id);
+        if (script == null || !script.source().equals(config.script)) {
+            logger.debug("Compiling script for sentinel: " + config.id);
+            script = new CompiledScript(config.script,
+                    interpreter.compile(config.script, "<sentinel " + config.id + ">"));
+            scripts.put(config.id, script);
+        }
+        return script.code();
+    }
+
+    private PythonInterpreter borrow() {
+        PythonInterpreter interpreter = pool.poll();
+        if (interpreter == null) {
+            interpreter = new PythonInterpreter();
+        }
+        return interpreter;
+    }
+
+    private void release(PythonInterpreter interpreter) {
+        // drop references to the script namespace
+        interpreter.setLocals(new PyStringMap());
+        if (!pool.offer(interpreter)) {
+            interpreter.close();
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.signomix.sentinel.domain;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import com.signomix.common.iot.Device;
+import com.signomix.common.iot.sentinel.SentinelConfig;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Recipients of sentinel alerts by (config, device).
+ * The config team with {device.team}, {device.admins} and {device.owner}
+ * expanded and the config administrators are merged into one list without
+ * duplicates and empty names. An entry is valid as long as the cached config
+ * and device instances are used; SentinelLogic and DeviceEventLogic remove
+ * entries when configs or devices change.
+ */
+@ApplicationScoped
+public class RecipientCache {
+
+    @Inject
+    Logger logger;
+
+    @ConfigProperty(name = "signomix.cache.recipients.size", defaultValue = "10000")
+    int maxSize;
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    private record Key(long configId, String deviceEui) {
+    }
+
+    private record Entry(SentinelConfig config, Device device, String[] recipients) {
+    }
+
+    /**
+     * Returns recipients of alerts of the config for the device.
+     *
+     * @param config the sentinel config
+     * @param device the device (may be null)
+     * @return user IDs of recipients
+     */
+    public String[] getRecipients(SentinelConfig config, Device device) {
+        if (device == null) {
+            return resolve(config, null);
+        }
+        Key key = new Key(config.id, device.getEUI());
+        Entry entry = entries.get(key);
+        if (entry != null && entry.config() == config && entry.device() == device) {
+            return entry.recipients();
+        }
+        String[] recipients = resolve(config, device);
+        if (entries.size() >= maxSize) {
+            evict();
+        }
+        entries.put(key, new Entry(config, device, recipients));
+        return recipients;
+    }
+
+    /**
+     * Removes recipients of the config.
+     *
+     * @param configId the config id
+     */
+    public void invalidate(long configId) {
+        entries.keySet().removeIf(key -> key.configId() == configId);
+    }
+
+    /**
+     * Removes recipients resolved for the device.
+     *
+     * @param deviceEui the device EUI
+     */
+    public void invalidateDevice(String deviceEui) {
+        entries.keySet().removeIf(key -> key.deviceEui().equals(deviceEui));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    static String[] resolve(SentinelConfig config, Device device) {
+        LinkedHashSet<String> recipients = new LinkedHashSet<>();
+        add(recipients, expandTeam(config.team, device));
+        add(recipients, config.administrators);
+        return recipients.toArray(new String[0]);
+    }
+
+    /**
+     * Expands the team variables {device.team}, {device.admins},
+     * {device.owner} to lists of user IDs.
+     */
+    static String expandTeam(String team, Device device) {
+        if (team == null || team.isEmpty()) {
+            return "";
+        }
+        String result = team;
+        String deviceTeam = device != null ? device.getTeam() : "";
+        String deviceAdmins = device != null ? device.getAdministrators() : "";
+        String deviceOwner = device != null ? device.getUserID() : "";
+        if (deviceTeam != null && !deviceTeam.isEmpty()) {
+            result = result.replace("{device.team}", deviceTeam.trim());
+        }
+        if (deviceAdmins != null && !deviceAdmins.isEmpty()) {
+            result = result.replace("{device.admins}", deviceAdmins.trim());
+        }
+        if (deviceOwner != null && !deviceOwner.isEmpty()) {
+            result = result.replace("{device.owner}", deviceOwner.trim());
+        }
+        return result;
+    }
+
+    private static void add(LinkedHashSet<String> recipients, String list) {
+        if (list == null || list.isEmpty()) {
+            return;
+        }
+        String[] names = list.split(",");
+        String name;
+        for (int i = 0; i < names.length; i++) {
+            name = names[i].trim();
+            if (!name.isEmpty()) {
+                recipients.add(name);
+            }
+        }
+    }
+
+    /**
+     * Removes entries until the cache is filled to 90% of its capacity.
+     */
+    private void evict() {
+        int limit = maxSize - Math.max(1, maxSize / 10);
+        Iterator<Key> it = entries.keySet().iterator();
+        while (entries.size() > limit && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+        logger.debug("Recipient cache evicted, size: " + entries.size());
+    }
+
+}
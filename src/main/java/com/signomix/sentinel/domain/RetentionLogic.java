@@ -0,0 +1,280 @@
+package com.signomix.sentinel.domain;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import io.agroal.api.AgroalDataSource;
+import io.quarkus.agroal.DataSource;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * Background deletion of signals.
+ * Purge jobs delete all signals of one user on request. The retention job
+ * runs every signomix.retention.interval and deletes signals older than
+ * signomix.retention.days (0 disables it). Rows are deleted in chunks of
+ * signomix.retention.chunk.size, each in its own transaction, with a pause
+ * between chunks, so no job holds locks for long or starves signal writes.
+ * The retention job and purge jobs run on separate threads, so a long
+ * retention run does not delay purges; purges run one at a time, in the order
+ * they were requested. A PostgreSQL advisory lock makes
+ * sure that only one instance runs the retention job, or purges the signals
+ * of a given user, at a time. A retention job finding its lock taken is
+ * skipped, as the other instance does the same work. A purge finding its
+ * lock taken stays queued and is retried every signomix.retention.retry ms;
+ * purge locks are keyed by a hash of the user id, so a hash collision only
+ * delays one of the purges.
+ * Job status is kept in memory of the instance that accepted the job, for
+ * signomix.retention.job.ttl after the job has finished. It is lost on
+ * restart: a purge queued or running when the instance stops is not resumed
+ * and has to be requested again.
+ */
+@ApplicationScoped
+public class RetentionLogic {
+
+    // advisory lock classes, the second key is 0 or the user id hash
+    private static final int RETENTION_LOCK = 0x53524554;
+    private static final int PURGE_LOCK = 0x53505247;
+
+    @Inject
+    Logger logger;
+
+    @Inject
+    @DataSource("oltp")
+    AgroalDataSource tsDs;
+
+    @ConfigProperty(name = "signomix.retention.days", defaultValue = "0")
+    int retentionDays;
+
+    @ConfigProperty(name = "signomix.retention.interval", defaultValue = "3600000")
+    long interval;
+
+    @ConfigProperty(name = "signomix.retention.chunk.size", defaultValue = "1000")
+    int chunkSize;
+
+    @ConfigProperty(name = "signomix.retention.chunk.pause", defaultValue = "100")
+    long chunkPause;
+
+    @ConfigProperty(name = "signomix.retention.job.ttl", defaultValue = "86400000")
+    long jobTtl;
+
+    @ConfigProperty(name = "signomix.retention.retry", defaultValue = "10000")
+    long retryDelay;
+
+    SignalPurgeDao signalPurgeDao;
+
+    private final ConcurrentHashMap<String, Job> jobs = new ConcurrentHashMap<>();
+    private ScheduledExecutorService retentionExecutor;
+    private ScheduledExecutorService purgeExecutor;
+    private volatile boolean running;
+
+    public enum Type {
+        PURGE, RETENTION
+    }
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, SKIPPED, FAILED
+    }
+
+    /**
+     * Deletion job. Fields are updated by the job thread while it runs.
+     */
+    public static final class Job {
+        public final String id = UUID.randomUUID().toString();
+        public final Type type;
+        // null for the retention job
+        public final String userId;
+        public final long createdAt = System.currentTimeMillis();
+        public volatile Status status = Status.QUEUED;
+        public volatile long deleted;
+        public volatile Long startedAt;
+        public volatile Long finishedAt;
+        public volatile String error;
+
+        Job(Type type, String userId) {
+            this.type = type;
+            this.userId = userId;
+        }
+
+        boolean isActive() {
+            return status == Status.QUEUED || status == Status.RUNNING;
+        }
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        signalPurgeDao = new SignalPurgeDao();
+        running = true;
+        retentionExecutor = newExecutor("sentinel-retention");
+        purgeExecutor = newExecutor("sentinel-purge");
+        if (retentionDays > 0) {
+            retentionExecutor.scheduleWithFixedDelay(this::runRetention, interval, interval, TimeUnit.MILLISECONDS);
+            logger.info("Signal retention: " + retentionDays + " days, checked every " + interval + " ms");
+        }
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        running = false;
+        retentionExecutor.shutdownNow();
+        purgeExecutor.shutdownNow();
+    }
+
+    private static ScheduledExecutorService newExecutor(String name) {
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues deletion of all signals of the user. When a purge of the user is
+     * already queued or running, that job is returned instead.
+     *
+     * @param userId the user id
+     * @return the job
+     */
+    public synchronized Job purge(String userId) {
+        removeExpiredJobs();
+        for (Job job : jobs.values()) {
+            if (job.type == Type.PURGE && userId.equals(job.userId) && job.isActive()) {
+                return job;
+            }
+        }
+        Job job = new Job(Type.PURGE, userId);
+        jobs.put(job.id, job);
+        purgeExecutor.execute(() -> run(job));
+        return job;
+    }
+
+    /**
+     * @param userId        the user id
+     * @param withRetention true to include retention jobs
+     * @return jobs of the user, newest first
+     */
+    public List<Job> getJobs(String userId, boolean withRetention) {
+        ArrayList<Job> result = new ArrayList<>();
+        for (Job job : jobs.values()) {
+            if (userId.equals(job.userId) || (withRetention && job.type == Type.RETENTION)) {
+                result.add(job);
+            }
+        }
+        result.sort(Comparator.comparingLong((Job job) -> job.createdAt).reversed());
+        return result;
+    }
+
+    /**
+     * @param id the job id
+     * @return the job or null if not found
+     */
+    public Job getJob(String id) {
+        return jobs.get(id);
+    }
+
+    void runRetention() {
+        removeExpiredJobs();
+        Job job = new Job(Type.RETENTION, null);
+        jobs.put(job.id, job);
+        run(job);
+    }
+
+    private void run(Job job) {
+        if (!running) {
+            return;
+        }
+        int lockClass = job.type == Type.RETENTION ? RETENTION_LOCK : PURGE_LOCK;
+        int lockId = job.type == Type.RETENTION ? 0 : job.userId.hashCode();
+        boolean finished = true;
+        try (Connection conn = tsDs.getConnection()) {
+            if (!signalPurgeDao.tryLock(conn, lockClass, lockId)) {
+                if (job.type == Type.RETENTION) {
+                    job.status = Status.SKIPPED;
+                    job.error = "Already running on another instance";
+                    logger.info("Signal " + job.type + " job " + job.id + " skipped, lock taken");
+                } else {
+                    // the user already got the job, so it waits for the lock
+                    finished = false;
+                    job.error = "Waiting for another purge to finish";
+                    purgeExecutor.schedule(() -> run(job), retryDelay, TimeUnit.MILLISECONDS);
+                    logger.debug("Signal " + job.type + " job " + job.id + " waiting, lock taken");
+                }
+                return;
+            }
+            job.startedAt = System.currentTimeMillis();
+            job.status = Status.RUNNING;
+            job.error = null;
+            try {
+                if (deleteChunks(conn, job)) {
+                    job.status = Status.DONE;
+                } else {
+                    job.status = Status.FAILED;
+                    job.error = "Stopped";
+                }
+            } finally {
+                signalPurgeDao.unlock(conn, lockClass, lockId);
+            }
+            logger.info("Signal " + job.type + " job " + job.id + " " + job.status + ": " + job.deleted
+                    + " signals deleted");
+        } catch (SQLException | RuntimeException e) {
+            // never thrown to the executor, it would cancel the retention schedule
+            finished = true;
+            job.status = Status.FAILED;
+            job.error = e.getMessage();
+            logger.error("Signal " + job.type + " job " + job.id + " failed", e);
+        } finally {
+            if (finished) {
+                job.finishedAt = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * @return false if the job has been stopped before deleting all rows
+     */
+    private boolean deleteChunks(Connection conn, Job job) throws SQLException {
+        Timestamp before = job.type == Type.RETENTION
+                ? new Timestamp(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays))
+                : null;
+        int deleted;
+        do {
+            if (!running) {
+                return false;
+            }
+            if (job.type == Type.RETENTION) {
+                deleted = signalPurgeDao.deleteSignalsBefore(conn, before, chunkSize);
+            } else {
+                deleted = signalPurgeDao.deleteUserSignals(conn, job.userId, chunkSize);
+            }
+            job.deleted += deleted;
+            if (deleted >= chunkSize && chunkPause > 0) {
+                try {
+                    Thread.sleep(chunkPause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        } while (deleted >= chunkSize);
+        return true;
+    }
+
+    private void removeExpiredJobs() {
+        long limit = System.currentTimeMillis() - jobTtl;
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt < limit);
+    }
+
+}
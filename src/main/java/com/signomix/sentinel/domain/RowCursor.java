@@ -0,0 +1,189 @@
+package com.signomix.sentinel.domain;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+
+/**
+ * Forward-only iteration over a query result read in chunks of the fetch size.
+ * The connection is switched to manual commit, so the PostgreSQL driver keeps
+ * the result in a server-side cursor and only one chunk of rows is held in
+ * memory at a time. The cursor owns the connection and must be closed.
+ * Iteration and close() are synchronized: a stream may be cancelled from
+ * another thread than the one reading rows, and close() then waits for the
+ * row being read instead of closing the result set under it.
+ *
+ * @param <T> the row type
+ */
+public class RowCursor<T> implements Iterator<T>, AutoCloseable {
+
+    /**
+     * Maps the current row of the result set.
+     */
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Binds the statement parameters.
+     */
+    @FunctionalInterface
+    public interface Binder {
+        void bind(PreparedStatement pstmt) throws SQLException;
+    }
+
+    private final Connection conn;
+    private final PreparedStatement pstmt;
+    private final ResultSet rs;
+    private final RowMapper<T> mapper;
+    private final int chunkSize;
+    private Boolean hasNext;
+    private boolean closed;
+
+    private RowCursor(Connection conn, PreparedStatement pstmt, ResultSet rs, RowMapper<T> mapper,
+            int chunkSize) {
+        this.conn = conn;
+        this.pstmt = pstmt;
+        this.rs = rs;
+        this.mapper = mapper;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Runs the query.
+     *
+     * @param conn      the connection, closed with the cursor
+     * @param sql       the query
+     * @param binder    sets the query parameters
+     * @param fetchSize number of rows read from the server at once
+     * @param mapper    maps a row
+     * @return the cursor
+     * @throws SQLException
+     */
+    public static <T> RowCursor<T> open(Connection conn, String sql, Binder binder, int fetchSize,
+            RowMapper<T> mapper) throws SQLException {
+        PreparedStatement pstmt = null;
+        try {
+            conn.setAutoCommit(false);
+            pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(fetchSize);
+            binder.bind(pstmt);
+            return new RowCursor<>(conn, pstmt, pstmt.executeQuery(), mapper, Math.max(1, fetchSize));
+        } catch (SQLException e) {
+            if (pstmt != null) {
+                pstmt.close();
+            }
+            release(conn);
+            throw e;
+        }
+    }
+
+    /**
+     * Streams the rows of the cursor. The cursor is opened on subscription and
+     * rows are read in chunks of the fetch size, the next chunk only when the
+     * rows of the previous one have been requested downstream. Opening, every
+     * chunk read and closing run on a worker thread, whichever thread requests
+     * rows (usually the event loop writing the response). The cursor is closed
+     * when the stream completes, fails or is cancelled.
+     *
+     * @param open opens the cursor
+     * @return the rows
+     */
+    public static <T> Multi<T> stream(Callable<RowCursor<T>> open) {
+        return Multi.createFrom().<RowCursor<T>, T>resource(() -> {
+            try {
+                return open.call();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, cursor -> Multi.createBy().repeating()
+                .uni(() -> Uni.createFrom().item(cursor::nextChunk)
+                        .runSubscriptionOn(Infrastructure.getDefaultWorkerPool()))
+                .until(List::isEmpty)
+                .onItem().<T>disjoint())
+                // close() waits for a chunk being read, so it must not run on the event loop
+                .withFinalizer((Consumer<RowCursor<T>>) cursor -> Infrastructure.getDefaultWorkerPool()
+                        .execute(cursor::close))
+                .runSubscriptionOn(Infrastructure.getDefaultWorkerPool());
+    }
+
+    /**
+     * Reads up to fetch size rows.
+     *
+     * @return the rows, empty at the end of the result
+     */
+    synchronized List<T> nextChunk() {
+        ArrayList<T> rows = new ArrayList<>(chunkSize);
+        while (rows.size() < chunkSize && hasNext()) {
+            rows.add(next());
+        }
+        return rows;
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+        if (hasNext == null) {
+            try {
+                hasNext = !closed && rs.next();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return hasNext;
+    }
+
+    @Override
+    public synchronized T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        hasNext = null;
+        try {
+            return mapper.map(rs);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            rs.close();
+            pstmt.close();
+        } catch (SQLException e) {
+            // the connection is released anyway
+        }
+        release(conn);
+    }
+
+    private static void release(Connection conn) {
+        try {
+            conn.rollback();
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            // the pool validates the connection on return
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            // nothing more to do
+        }
+    }
+
+}
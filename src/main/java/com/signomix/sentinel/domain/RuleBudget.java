@@ -0,0 +1,179 @@
+package com.signomix.sentinel.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import com.signomix.common.iot.sentinel.SentinelConfig;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Evaluation budgets of sentinel rules.
+ * The evaluation time and the number of evaluations of every rule are summed
+ * over a moving window (split into {@value #SLOTS} slots). A rule is evaluated
+ * once per device, so the budget applies to the mean time of one evaluation:
+ * a rule taking more than signomix.rule.budget ms per evaluation, after at
+ * least signomix.rule.budget.evaluations evaluations within the window, is
+ * quarantined, however many devices it covers. Evaluations stopped by
+ * signomix.rule.timeout count with their full time. A quarantined rule is not
+ * evaluated until an administrator releases it or its owner updates the
+ * config.
+ * Quarantine is kept in memory, so it is cleared on restart.
+ */
+@ApplicationScoped
+public class RuleBudget {
+
+    private static final int SLOTS = 6;
+
+    @Inject
+    Logger logger;
+
+    @ConfigProperty(name = "signomix.rule.budget", defaultValue = "200")
+    long budget;
+
+    @ConfigProperty(name = "signomix.rule.budget.evaluations", defaultValue = "10")
+    long minEvaluations;
+
+    @ConfigProperty(name = "signomix.rule.budget.window", defaultValue = "60000")
+    long window;
+
+    // evaluation cost by config id
+    private final ConcurrentHashMap<Long, Cost> costs = new ConcurrentHashMap<>();
+    // quarantined rules by config id
+    private final ConcurrentHashMap<Long, Quarantine> quarantined = new ConcurrentHashMap<>();
+
+    /**
+     * @param cost        mean evaluation time in the window (ms)
+     * @param evaluations number of evaluations in the window
+     */
+    public record Quarantine(long configId, String name, String userId, Long organizationId, long cost,
+            long evaluations, long createdAt) {
+    }
+
+    private static final class Cost {
+        final long[] nanos = new long[SLOTS];
+        final long[] counts = new long[SLOTS];
+        long slot;
+        // totals in the window, set by add()
+        long totalNanos;
+        long totalCount;
+
+        Cost(long slot) {
+            this.slot = slot;
+        }
+
+        /**
+         * Adds the evaluation to the slot and updates the totals of the window.
+         * Called with the instance locked.
+         */
+        void add(long currentSlot, long evaluationNanos) {
+            if (currentSlot - slot >= SLOTS) {
+                Arrays.fill(nanos, 0);
+                Arrays.fill(counts, 0);
+            } else {
+                for (long i = slot + 1; i <= currentSlot; i++) {
+                    nanos[(int) (i % SLOTS)] = 0;
+                    counts[(int) (i % SLOTS)] = 0;
+                }
+            }
+            if (currentSlot > slot) {
+                slot = currentSlot;
+            }
+            nanos[(int) (currentSlot % SLOTS)] += evaluationNanos;
+            counts[(int) (currentSlot % SLOTS)]++;
+            totalNanos = 0;
+            totalCount = 0;
+            for (int i = 0; i < SLOTS; i++) {
+                totalNanos += nanos[i];
+                totalCount += counts[i];
+            }
+        }
+    }
+
+    /**
+     * @param configId the config id
+     * @return true if the rule is quarantined
+     */
+    public boolean isQuarantined(long configId) {
+        return !quarantined.isEmpty() && quarantined.containsKey(configId);
+    }
+
+    /**
+     * Adds the evaluation to the rule cost and quarantines the rule if its mean
+     * evaluation time in the window exceeds the budget.
+     *
+     * @param config the sentinel config
+     * @param nanos  evaluation time in nanoseconds
+     * @return the quarantine if the rule has just been quarantined, otherwise
+     *         null
+     */
+    public Quarantine record(SentinelConfig config, long nanos) {
+        if (budget <= 0) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        long currentSlot = now / Math.max(1, window / SLOTS);
+        Cost cost = costs.get(config.id);
+        if (cost == null) {
+            cost = costs.computeIfAbsent(config.id, id -> new Cost(currentSlot));
+        }
+        long totalNanos;
+        long evaluations;
+        synchronized (cost) {
+            cost.add(currentSlot, nanos);
+            totalNanos = cost.totalNanos;
+            evaluations = cost.totalCount;
+        }
+        if (evaluations < Math.max(1, minEvaluations)) {
+            return null;
+        }
+        long mean = totalNanos / evaluations / 1_000_000;
+        if (mean <= budget) {
+            return null;
+        }
+        Quarantine quarantine = new Quarantine(config.id, config.name, config.userId, config.organizationId,
+                mean, evaluations, now);
+        if (quarantined.putIfAbsent(config.id, quarantine) != null) {
+            return null;
+        }
+        logger.warn("Sentinel " + config.id + " quarantined: " + mean + " ms per evaluation (" + evaluations
+                + " evaluations in " + window + " ms), budget " + budget + " ms");
+        return quarantine;
+    }
+
+    /**
+     * @param organizationId the organization id or null for all rules
+     * @return quarantined rules
+     */
+    public List<Quarantine> getQuarantined(Long organizationId) {
+        ArrayList<Quarantine> result = new ArrayList<>();
+        for (Quarantine quarantine : quarantined.values()) {
+            if (organizationId == null || organizationId.equals(quarantine.organizationId())) {
+                result.add(quarantine);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Releases the rule from quarantine and clears its cost.
+     *
+     * @param configId the config id
+     * @return true if the rule was quarantined
+     */
+    public boolean release(long configId) {
+        costs.remove(configId);
+        Quarantine quarantine = quarantined.remove(configId);
+        if (quarantine != null) {
+            logger.info("Sentinel " + configId + " released from quarantine");
+        }
+        return quarantine != null;
+    }
+
+}
@@ -0,0 +1,273 @@
+package com.signomix.sentinel.domain;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jboss.logging.Logger;
+
+import com.signomix.common.db.IotDatabaseException;
+import com.signomix.common.db.SentinelDaoIface;
+import com.signomix.common.iot.sentinel.SentinelConfig;
+
+import io.agroal.api.AgroalDataSource;
+import io.quarkus.agroal.DataSource;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * In-memory index of active sentinel configs keyed by the selectors used to
+ * attach rules to devices: device EUI, tag (name and value) and group EUI.
+ * Every bucket is an immutable map replaced as a whole, so lookups on the
+ * event path are plain reads of a ConcurrentHashMap.
+ * Buckets are loaded from the database on first use and are dropped or
+ * updated by SentinelLogic (config changes) and DeviceEventLogic (device
+ * changes).
+ */
+@ApplicationScoped
+public class RuleIndex {
+
+    @Inject
+    Logger logger;
+
+    @Inject
+    @DataSource("oltp")
+    AgroalDataSource tsDs;
+
+    SentinelDaoIface sentinelDao;
+
+    private static final int MAX_CONFIGS = 1000;
+
+    private static final String DEVICE_PREFIX = "d:";
+    private static final String TAG_PREFIX = "t:";
+    private static final String GROUP_PREFIX = "g:";
+
+    // key: selector key + "#" + eventType, value: configs by id
+    private final ConcurrentHashMap<String, Map<Long, SentinelConfig>> buckets = new ConcurrentHashMap<>();
+    // compiled threshold rules by config id
+    private final ConcurrentHashMap<Long, CompiledRule> compiledRules = new ConcurrentHashMap<>();
+    // incremented on every modification, protects buckets against stale loads
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    void onStart(@Observes StartupEvent ev) {
+        sentinelDao = new com.signomix.common.tsdb.SentinelDao();
+        sentinelDao.setDatasource(tsDs);
+    }
+
+    /**
+     * Returns active configs related to the device, its tag and its groups.
+     *
+     * @param eventType the event type (EventLogic.EVENT_TYPE_*)
+     * @param deviceEui the device EUI
+     * @param tag       the device tag name (may be empty)
+     * @param tagValue  the device tag value (may be empty)
+     * @param groups    the device groups
+     * @return map of configs by id or null if configs for the device cannot be
+     *         read
+     */
+    public HashMap<Long, SentinelConfig> getConfigs(int eventType, String deviceEui, String tag, String tagValue,
+            String[] groups) {
+        HashMap<Long, SentinelConfig> configs = new HashMap<>();
+        Map<Long, SentinelConfig> bucket = getBucket(eventType, DEVICE_PREFIX + deviceEui);
+        if (bucket == null) {
+            return null;
+        }
+        configs.putAll(bucket);
+        if (!tag.isEmpty() && !tagValue.isEmpty()) {
+            bucket = getBucket(eventType, tagKey(tag, tagValue));
+            if (bucket != null) {
+                configs.putAll(bucket);
+            }
+        }
+        String groupName;
+        for (int i = 0; i < groups.length; i++) {
+            groupName = groups[i].trim();
+            if (groupName.isEmpty()) {
+                continue;
+            }
+            bucket = getBucket(eventType, GROUP_PREFIX + groupName);
+            if (bucket != null) {
+                configs.putAll(bucket);
+            }
+        }
+        return configs;
+    }
+
+    /**
+     * Puts the config into the index, replacing its previous version.
+     * Buckets of the config selectors are dropped for all event types and read
+     * again on demand, as the database decides which event types a config
+     * matches.
+     *
+     * @param config the config read from the database
+     */
+    public void put(SentinelConfig config) {
+        if (config == null || config.id == null) {
+            return;
+        }
+        generation.incrementAndGet();
+        removeFromBuckets(config.id);
+        compiledRules.remove(config.id);
+        if (!config.active) {
+            return;
+        }
+        if (config.deviceEui != null && !config.deviceEui.isEmpty()) {
+            dropBuckets(DEVICE_PREFIX + config.deviceEui);
+        }
+        if (config.groupEui != null && !config.groupEui.isEmpty()) {
+            dropBuckets(GROUP_PREFIX + config.groupEui);
+        }
+        if (config.tagName != null && !config.tagName.isEmpty() && config.tagValue != null
+                && !config.tagValue.isEmpty()) {
+            dropBuckets(tagKey(config.tagName, config.tagValue));
+        }
+    }
+
+    /**
+     * Removes the config from the index.
+     *
+     * @param configId the config id
+     */
+    public void remove(long configId) {
+        generation.incrementAndGet();
+        removeFromBuckets(configId);
+        compiledRules.remove(configId);
+    }
+
+    /**
+     * Drops configs cached for the device so that they will be read again on the
+     * next event. Called when the device is created, updated or removed.
+     *
+     * @param deviceEui the device EUI
+     */
+    public void invalidateDevice(String deviceEui) {
+        generation.incrementAndGet();
+        dropBuckets(DEVICE_PREFIX + deviceEui);
+    }
+
+    /**
+     * Drops all cached configs.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        buckets.clear();
+        compiledRules.clear();
+    }
+
+    /**
+     * Returns the compiled form of the threshold rule. The rule is compiled again
+     * when the config instance held by the index has been replaced.
+     *
+     * @param config the sentinel config
+     * @return compiled rule
+     */
+    public CompiledRule getCompiledRule(SentinelConfig config) {
+        CompiledRule rule = compiledRules.get(config.id);
+        if (rule == null || rule.getConfig() != config) {
+            rule = CompiledRule.compile(config);
+            compiledRules.put(config.id, rule);
+        }
+        return rule;
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private Map<Long, SentinelConfig> getBucket(int eventType, String selectorKey) {
+        String key = bucketKey(selectorKey, eventType);
+        Map<Long, SentinelConfig> bucket = buckets.get(key);
+        if (bucket != null) {
+            hits.increment();
+            return bucket;
+        }
+        misses.increment();
+        long gen = generation.get();
+        bucket = load(eventType, selectorKey);
+        if (bucket == null) {
+            return null;
+        }
+        if (generation.get() != gen) {
+            return bucket;
+        }
+        Map<Long, SentinelConfig> previous = buckets.putIfAbsent(key, bucket);
+        if (previous != null) {
+            return previous;
+        }
+        // a modification started after the check above may have missed the
+        // bucket, or changed a copy of it: drop it, it will be read again
+        if (generation.get() != gen) {
+            buckets.remove(key);
+        }
+        return bucket;
+    }
+
+    private Map<Long, SentinelConfig> load(int eventType, String selectorKey) {
+        List<SentinelConfig> configList;
+        try {
+            if (selectorKey.startsWith(DEVICE_PREFIX)) {
+                configList = sentinelDao.getConfigsByDevice(selectorKey.substring(DEVICE_PREFIX.length()),
+                        MAX_CONFIGS, 0, eventType);
+            } else if (selectorKey.startsWith(GROUP_PREFIX)) {
+                configList = sentinelDao.getConfigsByGroup(selectorKey.substring(GROUP_PREFIX.length()),
+                        MAX_CONFIGS, 0, eventType);
+            } else {
+                String[] tagParts = selectorKey.substring(TAG_PREFIX.length()).split("\t", 2);
+                configList = sentinelDao.getConfigsByTag(tagParts[0], tagParts[1], MAX_CONFIGS, 0, eventType);
+            }
+        } catch (IotDatabaseException e) {
+            logger.error(e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+        HashMap<Long, SentinelConfig> configs = new HashMap<>();
+        for (SentinelConfig config : configList) {
+            if (config.active) {
+                configs.put(config.id, config);
+            }
+        }
+        return Map.copyOf(configs);
+    }
+
+    private void dropBuckets(String selectorKey) {
+        String prefix = selectorKey + "#";
+        buckets.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private void removeFromBuckets(long configId) {
+        for (String key : buckets.keySet()) {
+            buckets.computeIfPresent(key, (k, bucket) -> {
+                if (!bucket.containsKey(configId)) {
+                    return bucket;
+                }
+                HashMap<Long, SentinelConfig> copy = new HashMap<>(bucket);
+                copy.remove(configId);
+                return Map.copyOf(copy);
+            });
+        }
+    }
+
+    private static String bucketKey(String selectorKey, int eventType) {
+        return selectorKey + "#" + eventType;
+    }
+
+    private static String tagKey(String tagName, String tagValue) {
+        return TAG_PREFIX + tagName + "\t" + tagValue;
+    }
+
+}
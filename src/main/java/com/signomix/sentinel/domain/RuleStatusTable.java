@@ -0,0 +1,174 @@
+package com.signomix.sentinel.domain;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jboss.logging.Logger;
+
+import com.signomix.common.db.IotDatabaseException;
+import com.signomix.common.db.SentinelDaoIface;
+
+import io.agroal.api.AgroalDataSource;
+import io.quarkus.agroal.DataSource;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * In-memory table of rule statuses by (rule id, device EUI).
+ * The status is the level of the last sentinel event registered for the
+ * device (>0 - alert registered, <0 - alert unregistered, 0 - none).
+ * Every device has its own table of primitive rule ids and statuses. A status
+ * is read from the database on first use and then kept up to date
+ * (write-through) by EventLogic whenever a sentinel event is recorded.
+ */
+@ApplicationScoped
+public class RuleStatusTable {
+
+    @Inject
+    Logger logger;
+
+    @Inject
+    @DataSource("oltp")
+    AgroalDataSource tsDs;
+
+    SentinelDaoIface sentinelDao;
+
+    private final ConcurrentHashMap<String, DeviceStatuses> devices = new ConcurrentHashMap<>();
+
+    /**
+     * Rule statuses of one device.
+     * Devices have a few rules, so ids are kept in a small array scanned
+     * linearly.
+     */
+    private static final class DeviceStatuses {
+        private long[] ruleIds = new long[4];
+        private int[] statuses = new int[4];
+        private int size;
+
+        synchronized boolean contains(long ruleId) {
+            return indexOf(ruleId) >= 0;
+        }
+
+        synchronized int get(long ruleId, int defaultStatus) {
+            int index = indexOf(ruleId);
+            return index < 0 ? defaultStatus : statuses[index];
+        }
+
+        synchronized void put(long ruleId, int status) {
+            int index = indexOf(ruleId);
+            if (index >= 0) {
+                statuses[index] = status;
+                return;
+            }
+            if (size == ruleIds.length) {
+                ruleIds = Arrays.copyOf(ruleIds, size * 2);
+                statuses = Arrays.copyOf(statuses, size * 2);
+            }
+            ruleIds[size] = ruleId;
+            statuses[size] = status;
+            size++;
+        }
+
+        synchronized void remove(long ruleId) {
+            int index = indexOf(ruleId);
+            if (index < 0) {
+                return;
+            }
+            size--;
+            ruleIds[index] = ruleIds[size];
+            statuses[index] = statuses[size];
+        }
+
+        private int indexOf(long ruleId) {
+            for (int i = 0; i < size; i++) {
+                if (ruleIds[i] == ruleId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        sentinelDao = new com.signomix.common.tsdb.SentinelDao();
+        sentinelDao.setDatasource(tsDs);
+    }
+
+    /**
+     * Returns the status of the rule for the device, reading it from the
+     * database if it is not known yet.
+     *
+     * @param ruleId the config id
+     * @param eui    the device EUI
+     * @return the rule status (0 if the status cannot be read)
+     */
+    public int get(long ruleId, String eui) {
+        DeviceStatuses statuses = devices.computeIfAbsent(eui, k -> new DeviceStatuses());
+        if (statuses.contains(ruleId)) {
+            return statuses.get(ruleId, 0);
+        }
+        int status;
+        try {
+            status = sentinelDao.getSentinelStatus(ruleId, eui);
+        } catch (IotDatabaseException e) {
+            // not cached, the next call will retry
+            logger.warn("Error getting device rule status", e);
+            return 0;
+        }
+        statuses.put(ruleId, status);
+        return status;
+    }
+
+    /**
+     * Records the status of the rule for the device.
+     * Called after the sentinel event has been saved in the database.
+     *
+     * @param ruleId the config id
+     * @param eui    the device EUI
+     * @param status the new status
+     */
+    public void put(long ruleId, String eui, int status) {
+        devices.computeIfAbsent(eui, k -> new DeviceStatuses()).put(ruleId, status);
+    }
+
+    /**
+     * Forgets the status of the rule for the device, so it is read from the
+     * database on next use.
+     *
+     * @param ruleId the config id
+     * @param eui    the device EUI
+     */
+    public void invalidate(long ruleId, String eui) {
+        DeviceStatuses statuses = devices.get(eui);
+        if (statuses != null) {
+            statuses.remove(ruleId);
+        }
+    }
+
+    /**
+     * Removes statuses of the rule for all devices.
+     *
+     * @param ruleId the config id
+     */
+    public void removeRule(long ruleId) {
+        for (DeviceStatuses statuses : devices.values()) {
+            statuses.remove(ruleId);
+        }
+    }
+
+    /**
+     * Removes all rule statuses of the device.
+     *
+     * @param eui the device EUI
+     */
+    public void removeDevice(String eui) {
+        devices.remove(eui);
+    }
+
+    public int getDeviceCount() {
+        return devices.size();
+    }
+
+}
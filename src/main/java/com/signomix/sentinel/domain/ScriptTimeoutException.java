@@ -0,0 +1,13 @@
+package com.signomix.sentinel.domain;
+
+/**
+ * Thrown when a rule script runs longer than the configured timeout and has
+ * been interrupted.
+ */
+public class ScriptTimeoutException extends RuntimeException {
+
+    public ScriptTimeoutException(long configId, long timeout) {
+        super("Script of sentinel " + configId + " interrupted after " + timeout + " ms");
+    }
+
+}
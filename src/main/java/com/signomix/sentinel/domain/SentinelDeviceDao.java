@@ -0,0 +1,60 @@
+package com.signomix.sentinel.domain;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Batch inserts of sentinel-device mappings.
+ * Rows are written to the columns of the sentinel_devices table filled by
+ * SentinelDaoIface.addDevice(), on the connection of the caller, so they are
+ * part of the transaction the caller has started. The table is created by
+ * signomix-common; SentinelLogic uses this insert only when the table has all
+ * of {@link #COLUMNS} (see TableColumns).
+ */
+public class SentinelDeviceDao {
+
+    /**
+     * Columns of the sentinel_devices table used by the insert.
+     */
+    public static final String[] COLUMNS = { "sentinel_id", "eui", "channels" };
+
+    private static final String INSERT_DEVICE = "INSERT INTO sentinel_devices (sentinel_id,eui,channels) "
+            + "VALUES (?,?,?)";
+
+    /**
+     * Inserts mappings of the devices to the config, executing a batch every
+     * batchSize rows.
+     *
+     * @param conn            the connection of the transaction
+     * @param configId        the sentinel config id
+     * @param euis            device EUIs
+     * @param channelMappings channel mappings of the devices, in the order of
+     *                        euis
+     * @param batchSize       maximum number of rows in one batch
+     * @throws SQLException
+     */
+    public void insertDevices(Connection conn, long configId, String[] euis, String[] channelMappings,
+            int batchSize) throws SQLException {
+        if (euis.length == 0) {
+            return;
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(INSERT_DEVICE)) {
+            int pending = 0;
+            for (int i = 0; i < euis.length; i++) {
+                pstmt.setLong(1, configId);
+                pstmt.setString(2, euis[i]);
+                pstmt.setString(3, channelMappings[i]);
+                pstmt.addBatch();
+                if (++pending >= batchSize) {
+                    pstmt.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                pstmt.executeBatch();
+            }
+        }
+    }
+
+}
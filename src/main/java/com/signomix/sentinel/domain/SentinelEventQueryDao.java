@@ -0,0 +1,73 @@
+package com.signomix.sentinel.domain;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.agroal.api.AgroalDataSource;
+
+/**
+ * Streamed reads of the sentinel_events table written by
+ * SentinelDaoIface.addSentinelEvent(). Rows are returned as maps of column
+ * values, keyed by column name, so the export follows the table definition.
+ * Only the columns used to select and order rows are assumed; they are
+ * checked by checkColumns() at startup, and while one of them is missing
+ * every query fails with an SQLException naming it.
+ */
+public class SentinelEventQueryDao {
+
+    /**
+     * Columns of the sentinel_events table used by the query.
+     */
+    public static final String[] COLUMN_NAMES = { "id", "sentinel_id" };
+
+    private AgroalDataSource dataSource;
+    private List<String> missingColumns = List.of();
+
+    public void setDatasource(AgroalDataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Checks the sentinel_events table against COLUMN_NAMES.
+     *
+     * @return columns missing in the table
+     * @throws SQLException if the table cannot be checked
+     */
+    public List<String> checkColumns() throws SQLException {
+        missingColumns = TableColumns.missing(dataSource, "sentinel_events", COLUMN_NAMES);
+        return missingColumns;
+    }
+
+    /**
+     * Opens a cursor over all events of the sentinel config, oldest first.
+     * Rows are read from the server in chunks of the fetch size.
+     *
+     * @param configId  the sentinel config id
+     * @param fetchSize number of rows read at once
+     * @return the cursor, to be closed by the caller
+     * @throws SQLException
+     */
+    public RowCursor<Map<String, Object>> openEvents(long configId, int fetchSize) throws SQLException {
+        if (!missingColumns.isEmpty()) {
+            throw new SQLException("sentinel_events table has no columns " + missingColumns);
+        }
+        return RowCursor.open(dataSource.getConnection(),
+                "SELECT * FROM sentinel_events WHERE sentinel_id=? ORDER BY id",
+                pstmt -> pstmt.setLong(1, configId), fetchSize, this::read);
+    }
+
+    private Map<String, Object> read(ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columns = metaData.getColumnCount();
+        LinkedHashMap<String, Object> row = new LinkedHashMap<>(columns * 2);
+        for (int i = 1; i <= columns; i++) {
+            row.put(metaData.getColumnLabel(i), rs.getObject(i));
+        }
+        return row;
+    }
+
+}
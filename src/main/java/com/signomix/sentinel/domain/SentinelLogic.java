@@ -1,21 +1,28 @@
 package com.signomix.sentinel.domain;
 
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.reactive.messaging.Channel;
+import org.eclipse.microprofile.reactive.messaging.Emitter;
 import org.jboss.logging.Logger;
 
 import com.signomix.common.Organization;
+import com.signomix.common.Tag;
 import com.signomix.common.User;
 import com.signomix.common.db.IotDatabaseException;
 import com.signomix.common.db.IotDatabaseIface;
 import com.signomix.common.db.SentinelDaoIface;
 import com.signomix.common.iot.Device;
 import com.signomix.common.iot.sentinel.SentinelConfig;
-import com.signomix.common.tsdb.OrganizationDao;
 
 import io.agroal.api.AgroalDataSource;
 import io.quarkus.agroal.DataSource;
+import io.quarkus.narayana.jta.QuarkusTransaction;
 import io.quarkus.runtime.StartupEvent;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.event.Observes;
@@ -38,9 +45,53 @@ public class SentinelLogic {
     SentinelDaoIface sentinelDao;
     IotDatabaseIface olapDao;
     IotDatabaseIface oltpDao;
-    OrganizationDao organizationDao;
+
+    @Inject
+    AuthLogic authLogic;
+
+    @Inject
+    RuleIndex ruleIndex;
+
+    @Inject
+    RuleStatusTable ruleStatusTable;
+
+    @Inject
+    MessageTemplates messageTemplates;
+
+    @Inject
+    RecipientCache recipientCache;
+
+    @Inject
+    PythonEngine pythonEngine;
+
+    @Inject
+    JavaScriptEngine javaScriptEngine;
+
+    @Inject
+    SentinelMetrics metrics;
+
+    @Inject
+    RuleBudget ruleBudget;
+
+    @Inject
+    ShardFilter shardFilter;
+
+    @Inject
+    @Channel("sentinel-changed")
+    Emitter<String> changeEmitter;
 
     private static final long DEFAULT_ORGANIZATION_ID = 1;
+    private static final int CONFIG_PAGE_SIZE = 1000;
+
+    @ConfigProperty(name = "signomix.sentinel.devices.bulk", defaultValue = "true")
+    boolean bulkWrite;
+
+    @ConfigProperty(name = "signomix.sentinel.devices.batch.size", defaultValue = "1000")
+    int batchSize;
+
+    SentinelDeviceDao sentinelDeviceDao;
+    // true if mappings can be written with SentinelDeviceDao
+    boolean batchDevices;
 
     void onStart(@Observes StartupEvent ev) {
         sentinelDao = new com.signomix.common.tsdb.SentinelDao();
@@ -49,8 +100,21 @@ public class SentinelLogic {
         olapDao.setDatasource(olapDs);
         oltpDao = new com.signomix.common.tsdb.IotDatabaseDao();
         oltpDao.setDatasource(tsDs);
-        organizationDao = new OrganizationDao();
-        organizationDao.setDatasource(tsDs);
+        sentinelDeviceDao = new SentinelDeviceDao();
+        if (bulkWrite) {
+            try {
+                List<String> missing = TableColumns.missing(tsDs, "sentinel_devices",
+                        SentinelDeviceDao.COLUMNS);
+                batchDevices = missing.isEmpty();
+                if (!batchDevices) {
+                    logger.error("sentinel_devices table has no columns " + missing
+                            + ", sentinel devices are written one by one through SentinelDao");
+                }
+            } catch (SQLException e) {
+                logger.error("sentinel_devices table not checked, sentinel devices are written through SentinelDao: "
+                        + e.getMessage());
+            }
+        }
     }
 
     public SentinelConfig getSentinelConfig(User user, long id) {
@@ -90,7 +154,9 @@ public class SentinelLogic {
             long id = sentinelDao.addConfig(config);
             config.id = id;
             List<Device> devices = getSentinelDevices(config, config.userId, config.organizationId);
-            addSentinelDevices(config, devices);
+            addSentinelDevices(config, devices, false);
+            ruleIndex.put(sentinelDao.getConfig(id));
+            publishChange(id);
         } catch (Exception e) {
             e.printStackTrace();
             logger.error(e.getMessage());
@@ -100,7 +166,7 @@ public class SentinelLogic {
     public void updateSentinelConfig(User user, SentinelConfig config) {
         Organization org = null;
         try {
-            org= organizationDao.getOrganization(user.organization);
+            org= authLogic.getOrganization(user.organization);
         } catch (IotDatabaseException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
@@ -116,14 +182,16 @@ public class SentinelLogic {
             return;
         }
         try {
-            SentinelConfig oldConfig = sentinelDao.getConfig(config.id);
-            sentinelDao.removeDevices(oldConfig.id);
             if(config.name==null || config.name.isEmpty()){
                 config.name=""+config.id;
             }
             sentinelDao.updateConfig(config);
             List<Device> devices = getSentinelDevices(config, config.userId, config.organizationId);
-            addSentinelDevices(config, devices);
+            addSentinelDevices(config, devices, true);
+            ruleIndex.put(sentinelDao.getConfig(config.id));
+            // the owner may have fixed the rule
+            ruleBudget.release(config.id);
+            publishChange(config.id);
         } catch (Exception e) {
             e.printStackTrace();
             logger.error(e.getMessage());
@@ -132,19 +200,186 @@ public class SentinelLogic {
 
     public void updateSentinelConfigDevices(User user, SentinelConfig config) {
         try {
-            sentinelDao.removeDevices(config.id);
             List<Device> devices = getSentinelDevices(config, config.userId, config.organizationId);
-            addSentinelDevices(config, devices);
+            addSentinelDevices(config, devices, true);
+            publishChange(config.id);
         } catch (Exception e) {
             e.printStackTrace();
             logger.error(e.getMessage());
         }
     }
 
+    /**
+     * Updates sentinel-device mappings of a single device.
+     * Only rows of the device are rewritten: the device is added to configs
+     * whose device, group or tag selector matches it, other configs of the
+     * owner are not touched. Candidate configs are read from the database,
+     * active or not: configs already related to the device and configs
+     * selecting its tags or groups. Every config related to the device is a
+     * candidate, so removing the rows of the device drops only mappings that
+     * no longer match. Reading, removing and writing again are done in one
+     * transaction.
+     *
+     * @param user   the device owner
+     * @param device the device
+     * @param tags   the device tags
+     * @param groups the device groups
+     */
+    public void updateDeviceMembership(User user, Device device, List<Tag> tags, String[] groups) {
+        String eui = device.getEUI();
+        String channelMapping = getChannelMapping(device);
+        int[] added = new int[1];
+        try {
+            QuarkusTransaction.requiringNew().run(() -> {
+                try {
+                    HashMap<Long, SentinelConfig> matching = new HashMap<>();
+                    // configs already related to the device, also those of other users
+                    for (SentinelConfig config : readAll((limit, offset) -> sentinelDao.getConfigsByDevice(eui,
+                            limit, offset, SentinelConfig.EVENT_TYPE_ANY))) {
+                        if (matchesDevice(config, eui, tags, groups)) {
+                            matching.put(config.id, config);
+                        }
+                    }
+                    ArrayList<SentinelConfig> candidates = new ArrayList<>();
+                    for (Tag tag : tags) {
+                        if (tag.name != null && tag.value != null) {
+                            candidates.addAll(readAll((limit, offset) -> sentinelDao.getConfigsByTag(tag.name,
+                                    tag.value, limit, offset, SentinelConfig.EVENT_TYPE_ANY)));
+                        }
+                    }
+                    for (String group : groups) {
+                        String groupName = group.trim();
+                        if (!groupName.isEmpty()) {
+                            candidates.addAll(readAll((limit, offset) -> sentinelDao.getConfigsByGroup(groupName,
+                                    limit, offset, SentinelConfig.EVENT_TYPE_ANY)));
+                        }
+                    }
+                    for (SentinelConfig config : candidates) {
+                        if (isOwnedBy(config, user) && matchesDevice(config, eui, tags, groups)) {
+                            matching.putIfAbsent(config.id, config);
+                        }
+                    }
+                    sentinelDao.removeDevice(eui);
+                    for (SentinelConfig config : matching.values()) {
+                        sentinelDao.addDevice(config.id, eui, channelMapping);
+                    }
+                    added[0] = matching.size();
+                } catch (IotDatabaseException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        } catch (Exception e) {
+            logger.error("device " + eui + " sentinels not updated: " + e.getMessage());
+            return;
+        }
+        logger.info("device " + eui + " added to sentinels: " + added[0]);
+    }
+
+    @FunctionalInterface
+    private interface ConfigPage {
+        List<SentinelConfig> read(int limit, int offset) throws IotDatabaseException;
+    }
+
+    /**
+     * Reads configs page by page, so no related config is left out by a limit.
+     */
+    private static List<SentinelConfig> readAll(ConfigPage page) throws IotDatabaseException {
+        ArrayList<SentinelConfig> configs = new ArrayList<>();
+        List<SentinelConfig> read;
+        do {
+            read = page.read(CONFIG_PAGE_SIZE, configs.size());
+            configs.addAll(read);
+        } while (read.size() == CONFIG_PAGE_SIZE);
+        return configs;
+    }
+
+    /**
+     * Checks the config owner the same way getSentinelConfigs() selects
+     * configs of the user.
+     */
+    private static boolean isOwnedBy(SentinelConfig config, User user) {
+        if (user.organization > DEFAULT_ORGANIZATION_ID) {
+            return user.organization.equals(config.organizationId);
+        }
+        return user.uid.equals(config.userId);
+    }
+
+    /**
+     * Checks the config selector against the device, in the same order as
+     * getSentinelDevices(): device EUI, group, tag.
+     */
+    static boolean matchesDevice(SentinelConfig config, String eui, List<Tag> tags, String[] groups) {
+        if (config.deviceEui != null && !config.deviceEui.isEmpty()) {
+            return config.deviceEui.equals(eui);
+        }
+        if (config.groupEui != null && !config.groupEui.isEmpty()) {
+            for (int i = 0; i < groups.length; i++) {
+                if (groups[i].equals(config.groupEui)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (config.tagName != null && !config.tagName.isEmpty() && config.tagValue != null
+                && !config.tagValue.isEmpty()) {
+            for (Tag tag : tags) {
+                if (config.tagName.equals(tag.name) && config.tagValue.equals(tag.value)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param user   the user
+     * @param config the sentinel config
+     * @return true if the config belongs to the user or to the user organization
+     */
+    public boolean canAccess(User user, SentinelConfig config) {
+        if (user.uid.equals(config.userId)) {
+            return true;
+        }
+        return user.organization != null && user.organization > DEFAULT_ORGANIZATION_ID
+                && user.organization.equals(config.organizationId);
+    }
+
+    /**
+     * User.OWNER is the signomix-common user type of the service owner, who
+     * administers the whole platform; organization administrators manage only
+     * their organization and are not service administrators.
+     *
+     * @param user the user
+     * @return true if the user is the service administrator
+     */
+    public boolean isAdmin(User user) {
+        return user.type != null && user.type == User.OWNER;
+    }
+
+    /**
+     * @return rules quarantined for exceeding their evaluation budget
+     */
+    public List<RuleBudget.Quarantine> getQuarantinedConfigs() {
+        return ruleBudget.getQuarantined(null);
+    }
+
+    /**
+     * Releases the rule from quarantine.
+     *
+     * @param id the config id
+     * @return true if the rule was quarantined
+     */
+    public boolean releaseQuarantinedConfig(long id) {
+        boolean released = ruleBudget.release(id);
+        // the rule may be quarantined by other instances
+        publishChange(id);
+        return released;
+    }
+
     public void deleteSentinelConfig(User user, long id) {
         Organization org = null;
         try {
-            org= organizationDao.getOrganization(user.organization);
+            org= authLogic.getOrganization(user.organization);
         } catch (IotDatabaseException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
@@ -162,12 +397,58 @@ public class SentinelLogic {
         try {
             sentinelDao.removeDevices(id);
             sentinelDao.removeConfig(id);
+            forget(id);
+            publishChange(id);
         } catch (Exception e) {
             e.printStackTrace();
             logger.error(e.getMessage());
         }
     }
 
+    /**
+     * Handles a config change made by another sentinel instance: the config is
+     * read again or, if it has been deleted, removed from local state.
+     *
+     * @param id the config id
+     */
+    public void handleConfigChanged(long id) {
+        SentinelConfig config;
+        try {
+            config = sentinelDao.getConfig(id);
+        } catch (IotDatabaseException e) {
+            logger.error(e.getMessage());
+            e.printStackTrace();
+            return;
+        }
+        if (config == null) {
+            forget(id);
+        } else {
+            ruleIndex.put(config);
+            ruleBudget.release(id);
+        }
+    }
+
+    private void forget(long id) {
+        ruleIndex.remove(id);
+        ruleStatusTable.removeRule(id);
+        messageTemplates.invalidate(id);
+        recipientCache.invalidate(id);
+        pythonEngine.invalidate(id);
+        javaScriptEngine.invalidate(id);
+        metrics.removeRule(id);
+        ruleBudget.release(id);
+    }
+
+    /**
+     * Informs other sentinel instances about the config change, so that they do
+     * not evaluate devices against the cached version.
+     */
+    private void publishChange(long id) {
+        if (shardFilter.isSharded()) {
+            changeEmitter.send(String.valueOf(id));
+        }
+    }
+
     /*
      * public void createSentinelConfig(User user, SentinelConfig config) {
      * try {
@@ -220,23 +501,65 @@ public class SentinelLogic {
         return devices;
     }
 
-    private void addSentinelDevices(SentinelConfig config, List<Device> devices) {
-        String channelMapping;
-        for (Device device : devices) {
-            try {
-                channelMapping = "";
-                String[] channels = device.getChannelsAsString().split(",");
-                for (int i = 0; i < channels.length; i++) {
-                    if (channels[i].isEmpty())
-                        continue;
-                    channelMapping += channels[i] + ":d" + (i + 1) + ";";
+    /**
+     * Writes sentinel-device mappings of the config.
+     * All rows are written in one transaction, as JDBC batch inserts of up to
+     * signomix.sentinel.devices.batch.size rows when the sentinel_devices table
+     * has the columns of SentinelDeviceDao, or one by one through SentinelDao
+     * otherwise. If the transaction fails, no mapping of the config is changed
+     * and the exception is thrown.
+     *
+     * @param config  the sentinel config
+     * @param devices devices related to the config
+     * @param replace if true, existing mappings of the config are removed first
+     */
+    private void addSentinelDevices(SentinelConfig config, List<Device> devices, boolean replace) {
+        long start = System.nanoTime();
+        String[] euis = new String[devices.size()];
+        String[] channelMappings = new String[devices.size()];
+        for (int i = 0; i < euis.length; i++) {
+            euis[i] = devices.get(i).getEUI();
+            channelMappings[i] = getChannelMapping(devices.get(i));
+        }
+        try {
+            QuarkusTransaction.requiringNew().run(() -> {
+                try {
+                    if (replace) {
+                        sentinelDao.removeDevices(config.id);
+                    }
+                    if (batchDevices) {
+                        try (Connection conn = tsDs.getConnection()) {
+                            sentinelDeviceDao.insertDevices(conn, config.id, euis, channelMappings,
+                                    Math.max(1, batchSize));
+                        }
+                    } else {
+                        for (int i = 0; i < euis.length; i++) {
+                            sentinelDao.addDevice(config.id, euis[i], channelMappings[i]);
+                        }
+                    }
+                } catch (IotDatabaseException | SQLException e) {
+                    throw new RuntimeException(e);
                 }
-                sentinelDao.addDevice(config.id, device.getEUI(), channelMapping);
-            } catch (Exception e) {
-                e.printStackTrace();
-                logger.error(e.getMessage());
-            }
+            });
+        } catch (RuntimeException e) {
+            logger.error("Writing sentinel " + config.id + " devices failed, mappings not changed: "
+                    + e.getMessage());
+            throw e;
+        }
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        logger.info("sentinel " + config.id + " devices written: " + euis.length + " rows in "
+                + (elapsed / 1000000) + " ms (" + (euis.length * 1000000000L / elapsed) + " rows/s)");
+    }
+
+    private String getChannelMapping(Device device) {
+        StringBuilder channelMapping = new StringBuilder();
+        String[] channels = device.getChannelsAsString().split(",");
+        for (int i = 0; i < channels.length; i++) {
+            if (channels[i].isEmpty())
+                continue;
+            channelMapping.append(channels[i]).append(":d").append(i + 1).append(';');
         }
+        return channelMapping.toString();
     }
 
 }
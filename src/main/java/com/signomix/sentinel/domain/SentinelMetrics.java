@@ -0,0 +1,202 @@
+package com.signomix.sentinel.domain;
+
+import java.util.EnumMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * Metrics of the event processing path, exposed on /q/metrics.
+ * Stage timers publish histograms, so percentiles can be computed by the
+ * metrics backend. Rule timers (count and total time per rule) show which
+ * rules cost the most.
+ */
+@ApplicationScoped
+public class SentinelMetrics {
+
+    public enum Stage {
+        PARSE("parse"),
+        DEVICE_LOOKUP("device_lookup"),
+        CONFIG_LOOKUP("config_lookup"),
+        STATUS_LOOKUP("status_lookup"),
+        EVALUATION_THRESHOLD("evaluation_threshold"),
+        EVALUATION_PYTHON("evaluation_python"),
+        EVALUATION_JAVASCRIPT("evaluation_javascript"),
+        PERSISTENCE("persistence"),
+        EMIT("emit");
+
+        final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    @Inject
+    MeterRegistry registry;
+
+    @Inject
+    EvaluationPipeline evaluationPipeline;
+
+    @Inject
+    EvaluationTracker evaluationTracker;
+
+    @Inject
+    EventSink eventSink;
+
+    @Inject
+    DeviceCache deviceCache;
+
+    @Inject
+    RecipientCache recipientCache;
+
+    @Inject
+    RuleIndex ruleIndex;
+
+    @Inject
+    RuleStatusTable ruleStatusTable;
+
+    @Inject
+    FrameCoalescer frameCoalescer;
+
+    private final EnumMap<Stage, Timer> stages = new EnumMap<>(Stage.class);
+    private final ConcurrentHashMap<Long, RuleMeters> rules = new ConcurrentHashMap<>();
+    private Counter alertsEmitted;
+
+    private record RuleMeters(Timer evaluations, Counter errors) {
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, Timer.builder("sentinel.stage")
+                    .description("Time spent in a stage of event processing")
+                    .tag("stage", stage.tag)
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        alertsEmitted = Counter.builder("sentinel.alerts.emitted")
+                .description("Alerts sent to the alerts channel")
+                .register(registry);
+        Gauge.builder("sentinel.pipeline.queue.depth", evaluationPipeline, EvaluationPipeline::getQueueDepth)
+                .description("Tasks waiting in evaluation pipeline queues")
+                .register(registry);
+        Gauge.builder("sentinel.pipeline.queue.capacity", evaluationPipeline,
+                EvaluationPipeline::getQueueCapacity)
+                .register(registry);
+        Gauge.builder("sentinel.evaluation.active", evaluationTracker, EvaluationTracker::getActiveCount)
+                .description("Messages being evaluated")
+                .register(registry);
+        Gauge.builder("sentinel.coalescer.pending", frameCoalescer, FrameCoalescer::getPendingCount)
+                .description("Open batches of coalesced frames")
+                .register(registry);
+        FunctionCounter.builder("sentinel.frames.coalesced", frameCoalescer, FrameCoalescer::getCoalesced)
+                .description("Frames superseded by later frames of the same device")
+                .register(registry);
+        Gauge.builder("sentinel.sink.queue.depth", eventSink, EventSink::getQueueDepth)
+                .description("Rows waiting to be written by the event sink")
+                .register(registry);
+        Gauge.builder("sentinel.cache.size", deviceCache, DeviceCache::size)
+                .tag("cache", "device")
+                .register(registry);
+        Gauge.builder("sentinel.cache.size", ruleIndex, RuleIndex::size)
+                .tag("cache", "rule_index")
+                .register(registry);
+        Gauge.builder("sentinel.cache.size", recipientCache, RecipientCache::size)
+                .tag("cache", "recipients")
+                .register(registry);
+        Gauge.builder("sentinel.cache.size", ruleStatusTable, RuleStatusTable::getDeviceCount)
+                .tag("cache", "rule_status")
+                .register(registry);
+        FunctionCounter.builder("sentinel.cache.requests", deviceCache, DeviceCache::getHits)
+                .tag("cache", "device")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("sentinel.cache.requests", deviceCache, DeviceCache::getMisses)
+                .tag("cache", "device")
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("sentinel.cache.requests", ruleIndex, RuleIndex::getHits)
+                .tag("cache", "rule_index")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("sentinel.cache.requests", ruleIndex, RuleIndex::getMisses)
+                .tag("cache", "rule_index")
+                .tag("result", "miss")
+                .register(registry);
+    }
+
+    /**
+     * Records time spent in the stage.
+     *
+     * @param stage the stage
+     * @param nanos time in nanoseconds
+     */
+    public void record(Stage stage, long nanos) {
+        Timer timer = stages.get(stage);
+        if (timer != null) {
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Records an evaluation of the rule.
+     *
+     * @param configId the config id
+     * @param stage    the evaluation stage (threshold, Python or JavaScript)
+     * @param nanos    evaluation time in nanoseconds
+     * @param error    true if the evaluation ended with an error
+     */
+    public void recordRule(long configId, Stage stage, long nanos, boolean error) {
+        record(stage, nanos);
+        RuleMeters meters = rules.get(configId);
+        if (meters == null) {
+            meters = rules.computeIfAbsent(configId, this::registerRule);
+        }
+        meters.evaluations().record(nanos, TimeUnit.NANOSECONDS);
+        if (error) {
+            meters.errors().increment();
+        }
+    }
+
+    private RuleMeters registerRule(Long configId) {
+        String rule = String.valueOf(configId);
+        return new RuleMeters(
+                Timer.builder("sentinel.rule.evaluation")
+                        .description("Evaluations of a rule and their cost")
+                        .tag("rule", rule)
+                        .register(registry),
+                Counter.builder("sentinel.rule.errors")
+                        .description("Evaluations of a rule ended with an error")
+                        .tag("rule", rule)
+                        .register(registry));
+    }
+
+    /**
+     * Removes metrics of the deleted rule.
+     *
+     * @param configId the config id
+     */
+    public void removeRule(long configId) {
+        RuleMeters meters = rules.remove(configId);
+        if (meters != null) {
+            registry.remove(meters.evaluations());
+            registry.remove(meters.errors());
+        }
+    }
+
+    public void alertEmitted() {
+        if (alertsEmitted != null) {
+            alertsEmitted.increment();
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.signomix.sentinel.domain;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * Assigns devices to sentinel instances.
+ * Every instance receives all events and processes only those of the devices
+ * it owns, so rule status, device caches and rule buckets of a device live in
+ * one instance. Devices are assigned with jump consistent hash of the EUI:
+ * when the instance count changes, only devices moving to the new instances
+ * change owner.
+ */
+@ApplicationScoped
+public class ShardFilter {
+
+    @Inject
+    Logger logger;
+
+    @ConfigProperty(name = "signomix.shard.count", defaultValue = "1")
+    int count;
+
+    @ConfigProperty(name = "signomix.shard.index", defaultValue = "0")
+    int index;
+
+    void onStart(@Observes StartupEvent ev) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalStateException(
+                    "Invalid shard configuration: index " + index + ", count " + count);
+        }
+        if (isSharded()) {
+            logger.info("Sharding enabled: instance " + index + " of " + count);
+        }
+    }
+
+    /**
+     * @return true if devices are shared between more than one instance
+     */
+    public boolean isSharded() {
+        return count > 1;
+    }
+
+    /**
+     * @param deviceEui the device EUI
+     * @return true if events of the device are processed by this instance
+     */
+    public boolean owns(String deviceEui) {
+        return count <= 1 || shardOf(deviceEui, count) == index;
+    }
+
+    /**
+     * @param deviceEui the device EUI
+     * @param count     number of shards
+     * @return the shard of the device
+     */
+    static int shardOf(String deviceEui, int count) {
+        return jumpHash(fnv1a(deviceEui), count);
+    }
+
+    private static long fnv1a(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // Lamping, Veach: A Fast, Minimal Memory, Consistent Hash Algorithm
+    private static int jumpHash(long key, int buckets) {
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+}
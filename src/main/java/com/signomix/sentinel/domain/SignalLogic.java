@@ -1,5 +1,7 @@
 package com.signomix.sentinel.domain;
 
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -31,13 +33,33 @@ public class SignalLogic {
     @DataSource("olap")
     AgroalDataSource olapDs;
 
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    @Inject
+    RetentionLogic retentionLogic;
+
+    @Inject
+    SentinelLogic sentinelLogic;
+
     SignalDaoIface signalDao;
+    SignalQueryDao signalQueryDao;
     IotDatabaseIface olapDao;
     IotDatabaseIface oltpDao;
 
     void onStart(@Observes StartupEvent ev) {
         signalDao = new com.signomix.common.tsdb.SignalDao();
         signalDao.setDatasource(tsDs);
+        signalQueryDao = new SignalQueryDao();
+        signalQueryDao.setDatasource(tsDs);
+        try {
+            List<String> missing = signalQueryDao.checkColumns();
+            if (!missing.isEmpty()) {
+                logger.error("signals table has no columns " + missing + ", signal pages are disabled");
+            }
+        } catch (SQLException e) {
+            logger.error("signals table not checked: " + e.getMessage());
+        }
         olapDao = new com.signomix.common.tsdb.IotDatabaseDao();
         olapDao.setDatasource(olapDs);
         oltpDao = new com.signomix.common.tsdb.IotDatabaseDao();
@@ -54,6 +76,50 @@ public class SignalLogic {
         return signals;
     }
 
+    /**
+     * Returns a page of the user signals, newest first.
+     *
+     * @param user             the user
+     * @param limit            maximum number of signals (1..MAX_PAGE_SIZE)
+     * @param cursor           token of the page returned with the previous page
+     *                         or null for the first page
+     * @param deviceEui        device EUI filter or null
+     * @param level            level filter or null
+     * @param sentinelConfigId sentinel config filter or null
+     * @param from             minimum creation time (epoch ms, inclusive) or null
+     * @param to               maximum creation time (epoch ms, exclusive) or null
+     * @return the page
+     * @throws IllegalArgumentException if the cursor is not valid
+     * @throws SQLException             if the signals cannot be read
+     */
+    public SignalPage getSignalPage(User user, int limit, String cursor, String deviceEui, Integer level,
+            Long sentinelConfigId, Long from, Long to) throws SQLException {
+        int size = limit <= 0 ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        SignalQueryDao.Cursor position = cursor == null || cursor.isEmpty() ? null
+                : SignalQueryDao.Cursor.decode(cursor);
+        SignalQueryDao.Filter filter = new SignalQueryDao.Filter(
+                deviceEui == null || deviceEui.isEmpty() ? null : deviceEui,
+                level,
+                sentinelConfigId,
+                from == null ? null : new Timestamp(from),
+                to == null ? null : new Timestamp(to));
+        List<Signal> signals;
+        try {
+            // one extra row tells if there is a next page
+            signals = signalQueryDao.getUserSignals(user.uid, filter, position, size + 1);
+        } catch (SQLException e) {
+            logger.error("Signal page of user " + user.uid + " not read: " + e.getMessage());
+            throw e;
+        }
+        String next = null;
+        if (signals.size() > size) {
+            signals = signals.subList(0, size);
+            Signal last = signals.get(size - 1);
+            next = new SignalQueryDao.Cursor(last.createdAt, last.id).encode();
+        }
+        return new SignalPage(signals, next);
+    }
+
     public Signal getSignal(User user, long id){
         Signal signal = null;
         try {
@@ -77,11 +143,38 @@ public class SignalLogic {
         }
     }
 
-    public void deleteSignals(User user){
-        try {
-            signalDao.deleteSignals(user.uid);
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * Queues deletion of all signals of the user.
+     *
+     * @param user the user
+     * @return the purge job
+     */
+    public RetentionLogic.Job deleteSignals(User user){
+        return retentionLogic.purge(user.uid);
+    }
+
+    /**
+     * @param user the user
+     * @return purge jobs of the user, and retention jobs for administrators
+     */
+    public List<RetentionLogic.Job> getDeletionJobs(User user){
+        return retentionLogic.getJobs(user.uid, sentinelLogic.isAdmin(user));
+    }
+
+    /**
+     * @param user the user
+     * @param id   the job id
+     * @return the job or null if not found or not visible to the user
+     */
+    public RetentionLogic.Job getDeletionJob(User user, String id){
+        RetentionLogic.Job job = retentionLogic.getJob(id);
+        if (job == null) {
+            return null;
+        }
+        if (user.uid.equals(job.userId)
+                || (job.type == RetentionLogic.Type.RETENTION && sentinelLogic.isAdmin(user))) {
+            return job;
         }
+        return null;
     }
 }
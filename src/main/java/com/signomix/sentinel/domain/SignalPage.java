@@ -0,0 +1,14 @@
+package com.signomix.sentinel.domain;
+
+import java.util.List;
+
+import com.signomix.common.iot.sentinel.Signal;
+
+/**
+ * Page of signals.
+ *
+ * @param signals the signals, newest first
+ * @param next    token of the next page or null if this is the last page
+ */
+public record SignalPage(List<Signal> signals, String next) {
+}
@@ -0,0 +1,89 @@
+package com.signomix.sentinel.domain;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Chunked deletes of the signals table and the advisory locks guarding them.
+ * Methods take the connection of the job, because a PostgreSQL session-level
+ * advisory lock belongs to the connection that acquired it. The connection
+ * must be in autocommit mode, so each chunk is a short transaction of its own.
+ */
+public class SignalPurgeDao {
+
+    /**
+     * Tries to take the session-level advisory lock (key1, key2).
+     *
+     * @param conn the connection of the job
+     * @param key1 the lock class
+     * @param key2 the lock id within the class
+     * @return true if the lock has been taken
+     * @throws SQLException
+     */
+    public boolean tryLock(Connection conn, int key1, int key2) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT pg_try_advisory_lock(?,?)")) {
+            pstmt.setInt(1, key1);
+            pstmt.setInt(2, key2);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    /**
+     * Releases the advisory lock taken with tryLock().
+     *
+     * @param conn the connection of the job
+     * @param key1 the lock class
+     * @param key2 the lock id within the class
+     * @throws SQLException
+     */
+    public void unlock(Connection conn, int key1, int key2) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT pg_advisory_unlock(?,?)")) {
+            pstmt.setInt(1, key1);
+            pstmt.setInt(2, key2);
+            pstmt.execute();
+        }
+    }
+
+    /**
+     * Deletes up to limit signals of the user.
+     *
+     * @param conn   the connection of the job
+     * @param userId the user id
+     * @param limit  maximum number of rows deleted
+     * @return number of deleted rows
+     * @throws SQLException
+     */
+    public int deleteUserSignals(Connection conn, String userId, int limit) throws SQLException {
+        String sql = "DELETE FROM signals WHERE id IN (SELECT id FROM signals WHERE user_id=? LIMIT ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, userId);
+            pstmt.setInt(2, limit);
+            return pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Deletes up to limit signals created before the given time, oldest first.
+     *
+     * @param conn   the connection of the job
+     * @param before creation time limit (exclusive)
+     * @param limit  maximum number of rows deleted
+     * @return number of deleted rows
+     * @throws SQLException
+     */
+    public int deleteSignalsBefore(Connection conn, Timestamp before, int limit) throws SQLException {
+        String sql = "DELETE FROM signals WHERE id IN "
+                + "(SELECT id FROM signals WHERE created_at<? ORDER BY created_at LIMIT ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setTimestamp(1, before);
+            pstmt.setInt(2, limit);
+            return pstmt.executeUpdate();
+        }
+    }
+
+}
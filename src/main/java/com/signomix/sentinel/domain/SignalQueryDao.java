@@ -0,0 +1,226 @@
+package com.signomix.sentinel.domain;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import com.signomix.common.iot.sentinel.Signal;
+
+import io.agroal.api.AgroalDataSource;
+
+/**
+ * Keyset-paginated and streamed reads of the signals table.
+ * Pages are ordered by (created_at, id) descending and a page starts after
+ * the cursor of the last row of the previous page, so every page is an index
+ * range scan of the same cost, whatever its depth. The indexes used by these
+ * queries are defined in doc/signals-indexes.sql.
+ * <p>
+ * The signals table is created by signomix-common. Its columns are checked by
+ * checkColumns() at startup; while a column is missing, every query fails with
+ * an SQLException naming the missing columns.
+ */
+public class SignalQueryDao {
+
+    /**
+     * Columns of the signals table read by the queries.
+     */
+    public static final String[] COLUMN_NAMES = { "id", "created_at", "user_id", "organization_id",
+            "sentinel_config_id", "device_eui", "level", "subject_en", "subject_pl", "message_en", "message_pl" };
+
+    private static final String COLUMNS = String.join(",", COLUMN_NAMES);
+
+    private AgroalDataSource dataSource;
+    private List<String> missingColumns = List.of();
+
+    /**
+     * Position after the last row of a page.
+     *
+     * @param createdAt creation time of the row
+     * @param id        id of the row
+     */
+    public record Cursor(Timestamp createdAt, long id) {
+
+        /**
+         * @return the cursor as an opaque URL-safe token
+         */
+        public String encode() {
+            String value = createdAt.getTime() / 1000 + "." + createdAt.getNanos() + ":" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * @param token the token returned by encode()
+         * @return the cursor
+         * @throws IllegalArgumentException if the token is not valid
+         */
+        public static Cursor decode(String token) {
+            try {
+                String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                int dot = value.indexOf('.');
+                int colon = value.indexOf(':', dot);
+                Timestamp createdAt = new Timestamp(Long.parseLong(value.substring(0, dot)) * 1000);
+                createdAt.setNanos(Integer.parseInt(value.substring(dot + 1, colon)));
+                return new Cursor(createdAt, Long.parseLong(value.substring(colon + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + token);
+            }
+        }
+    }
+
+    /**
+     * Signal filters, null fields are not applied.
+     *
+     * @param deviceEui        the device EUI
+     * @param level            the signal level
+     * @param sentinelConfigId the sentinel config id
+     * @param from             minimum creation time (inclusive)
+     * @param to               maximum creation time (exclusive)
+     */
+    public record Filter(String deviceEui, Integer level, Long sentinelConfigId, Timestamp from, Timestamp to) {
+    }
+
+    public void setDatasource(AgroalDataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Checks the signals table against COLUMN_NAMES.
+     *
+     * @return columns missing in the table
+     * @throws SQLException if the table cannot be checked
+     */
+    public List<String> checkColumns() throws SQLException {
+        missingColumns = TableColumns.missing(dataSource, "signals", COLUMN_NAMES);
+        return missingColumns;
+    }
+
+    /**
+     * Reads a page of signals of the user, newest first.
+     *
+     * @param userId the user id
+     * @param filter the filters
+     * @param cursor the cursor returned with the previous page or null for the
+     *               first page
+     * @param limit  maximum number of signals
+     * @return the signals
+     * @throws SQLException
+     */
+    public List<Signal> getUserSignals(String userId, Filter filter, Cursor cursor, int limit)
+            throws SQLException {
+        requireColumns();
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS)
+                .append(" FROM signals WHERE user_id=?");
+        appendFilter(sql, filter);
+        if (cursor != null) {
+            sql.append(" AND (created_at,id)<(?,?)");
+        }
+        sql.append(" ORDER BY created_at DESC,id DESC LIMIT ?");
+        ArrayList<Signal> signals = new ArrayList<>(limit);
+        try (Connection conn = dataSource.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            int index = bindFilter(pstmt, userId, filter);
+            if (cursor != null) {
+                pstmt.setTimestamp(index++, cursor.createdAt());
+                pstmt.setLong(index++, cursor.id());
+            }
+            pstmt.setInt(index, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    signals.add(read(rs));
+                }
+            }
+        }
+        return signals;
+    }
+
+    /**
+     * Opens a cursor over all signals of the user matching the filters, newest
+     * first. Rows are read from the server in chunks of the fetch size.
+     *
+     * @param userId    the user id
+     * @param filter    the filters
+     * @param fetchSize number of rows read at once
+     * @return the cursor, to be closed by the caller
+     * @throws SQLException
+     */
+    public RowCursor<Signal> openUserSignals(String userId, Filter filter, int fetchSize) throws SQLException {
+        requireColumns();
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS)
+                .append(" FROM signals WHERE user_id=?");
+        appendFilter(sql, filter);
+        sql.append(" ORDER BY created_at DESC,id DESC");
+        return RowCursor.open(dataSource.getConnection(), sql.toString(),
+                pstmt -> bindFilter(pstmt, userId, filter), fetchSize, this::read);
+    }
+
+    private void requireColumns() throws SQLException {
+        if (!missingColumns.isEmpty()) {
+            throw new SQLException("signals table has no columns " + missingColumns);
+        }
+    }
+
+    private void appendFilter(StringBuilder sql, Filter filter) {
+        if (filter.deviceEui() != null) {
+            sql.append(" AND device_eui=?");
+        }
+        if (filter.level() != null) {
+            sql.append(" AND level=?");
+        }
+        if (filter.sentinelConfigId() != null) {
+            sql.append(" AND sentinel_config_id=?");
+        }
+        if (filter.from() != null) {
+            sql.append(" AND created_at>=?");
+        }
+        if (filter.to() != null) {
+            sql.append(" AND created_at<?");
+        }
+    }
+
+    /**
+     * @return index of the next parameter
+     */
+    private int bindFilter(PreparedStatement pstmt, String userId, Filter filter) throws SQLException {
+        int index = 1;
+        pstmt.setString(index++, userId);
+        if (filter.deviceEui() != null) {
+            pstmt.setString(index++, filter.deviceEui());
+        }
+        if (filter.level() != null) {
+            pstmt.setInt(index++, filter.level());
+        }
+        if (filter.sentinelConfigId() != null) {
+            pstmt.setLong(index++, filter.sentinelConfigId());
+        }
+        if (filter.from() != null) {
+            pstmt.setTimestamp(index++, filter.from());
+        }
+        if (filter.to() != null) {
+            pstmt.setTimestamp(index++, filter.to());
+        }
+        return index;
+    }
+
+    private Signal read(ResultSet rs) throws SQLException {
+        Signal signal = new Signal();
+        signal.id = rs.getLong("id");
+        signal.createdAt = rs.getTimestamp("created_at");
+        signal.userId = rs.getString("user_id");
+        signal.organizationId = rs.getLong("organization_id");
+        signal.sentinelConfigId = rs.getLong("sentinel_config_id");
+        signal.deviceEui = rs.getString("device_eui");
+        signal.level = rs.getInt("level");
+        signal.subjectEn = rs.getString("subject_en");
+        signal.subjectPl = rs.getString("subject_pl");
+        signal.messageEn = rs.getString("message_en");
+        signal.messagePl = rs.getString("message_pl");
+        return signal;
+    }
+
+}
@@ -0,0 +1,267 @@
+package com.signomix.sentinel.domain;
+
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.reactive.messaging.Channel;
+import org.eclipse.microprofile.reactive.messaging.Emitter;
+import org.jboss.logging.Logger;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.signomix.common.iot.sentinel.Signal;
+
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.subscription.BackPressureFailure;
+import io.smallrye.mutiny.subscription.BackPressureStrategy;
+import io.smallrye.mutiny.subscription.MultiEmitter;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Pushes new signals to subscribers of the signal owner.
+ * Every subscriber has a buffer of signomix.signal.stream.buffer events; a
+ * subscriber that does not keep up overflows it and its stream fails, so a
+ * slow client never holds memory or delays other subscribers. The last
+ * signomix.signal.stream.replay events of every user with subscribers are
+ * kept, so a client reconnecting with the id of the last event it received
+ * gets the events it missed. When they are no longer available, the stream
+ * starts with a reset event and the client should reload its signals.
+ * When devices are sharded, signals are exchanged between instances over
+ * MQTT, because the subscriber may be connected to another instance than the
+ * one that created the signal.
+ */
+@ApplicationScoped
+public class SignalStream {
+
+    @Inject
+    Logger logger;
+
+    @Inject
+    ShardFilter shardFilter;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    @Channel("signal-created")
+    Emitter<String> signalEmitter;
+
+    @ConfigProperty(name = "signomix.signal.stream.buffer", defaultValue = "100")
+    int bufferSize;
+
+    @ConfigProperty(name = "signomix.signal.stream.replay", defaultValue = "100")
+    int replaySize;
+
+    @ConfigProperty(name = "signomix.signal.stream.replay.ttl", defaultValue = "600000")
+    long replayTtl;
+
+    /**
+     * Reset event, sent when missed events can not be replayed.
+     */
+    public static final Event RESET = new Event(null, null);
+
+    // event ids are unique only within one run of this instance
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConcurrentHashMap<String, UserStream> streams = new ConcurrentHashMap<>();
+
+    /**
+     * @param id     the event id
+     * @param signal the signal, null for the reset event
+     */
+    public record Event(String id, Signal signal) {
+        public boolean isReset() {
+            return signal == null;
+        }
+    }
+
+    private record Entry(long sequence, Event event) {
+    }
+
+    private static final class UserStream {
+        final ArrayDeque<Entry> recent = new ArrayDeque<>();
+        final CopyOnWriteArrayList<MultiEmitter<? super Event>> subscribers = new CopyOnWriteArrayList<>();
+        // sequence of the last event that is not in recent
+        long since;
+        long idleSince;
+        boolean removed;
+
+        UserStream(long since) {
+            this.since = since;
+            this.idleSince = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Sends a copy of the signal to subscribers of its owner on every instance.
+     * Called after the signal has been saved, so it has its database id.
+     *
+     * @param signal the new signal
+     */
+    public void publish(Signal signal) {
+        Signal copy = copyOf(signal);
+        if (!shardFilter.isSharded()) {
+            dispatch(copy);
+            return;
+        }
+        try {
+            signalEmitter.send(objectMapper.writeValueAsString(copy));
+        } catch (JsonProcessingException e) {
+            logger.error("Signal not published: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handles a signal published by an instance, this one included.
+     *
+     * @param payload the signal as JSON
+     */
+    public void receive(byte[] payload) {
+        if (!shardFilter.isSharded()) {
+            return;
+        }
+        try {
+            dispatch(objectMapper.readValue(payload, Signal.class));
+        } catch (Exception e) {
+            logger.warn("Invalid signal received: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Subscribes to new signals of the user.
+     *
+     * @param userId      the user id
+     * @param lastEventId id of the last event received before reconnecting or
+     *                    null
+     * @return the events, failing when the subscriber buffer overflows
+     */
+    public Multi<Event> subscribe(String userId, String lastEventId) {
+        return Multi.createFrom().<Event>emitter(emitter -> {
+            removeIdleStreams();
+            UserStream stream;
+            while (true) {
+                stream = streams.computeIfAbsent(userId, k -> new UserStream(sequence.get()));
+                synchronized (stream) {
+                    if (stream.removed) {
+                        continue;
+                    }
+                    replay(stream, lastEventId, emitter);
+                    stream.subscribers.add(emitter);
+                }
+                break;
+            }
+            UserStream subscribed = stream;
+            emitter.onTermination(() -> unsubscribe(subscribed, emitter));
+        }, BackPressureStrategy.ERROR)
+                .onOverflow().buffer(Math.max(1, bufferSize))
+                .onFailure(BackPressureFailure.class)
+                .invoke(e -> logger.debug("Slow signal stream subscriber of " + userId + " dropped"));
+    }
+
+    /**
+     * @return number of open subscriptions
+     */
+    public int getSubscriberCount() {
+        int count = 0;
+        for (UserStream stream : streams.values()) {
+            count += stream.subscribers.size();
+        }
+        return count;
+    }
+
+    // subscribers serialize the signal on their own threads
+    private static Signal copyOf(Signal signal) {
+        Signal copy = new Signal();
+        copy.id = signal.id;
+        copy.createdAt = signal.createdAt == null ? null : new Timestamp(signal.createdAt.getTime());
+        copy.deviceEui = signal.deviceEui;
+        copy.level = signal.level;
+        copy.subjectPl = signal.subjectPl;
+        copy.subjectEn = signal.subjectEn;
+        copy.messagePl = signal.messagePl;
+        copy.messageEn = signal.messageEn;
+        copy.sentinelConfigId = signal.sentinelConfigId;
+        copy.userId = signal.userId;
+        copy.organizationId = signal.organizationId;
+        return copy;
+    }
+
+    private void dispatch(Signal signal) {
+        if (signal.userId == null) {
+            return;
+        }
+        UserStream stream = streams.get(signal.userId);
+        if (stream == null) {
+            return;
+        }
+        synchronized (stream) {
+            long seq = sequence.incrementAndGet();
+            Event event = new Event(epoch + "-" + seq, signal);
+            stream.recent.addLast(new Entry(seq, event));
+            while (stream.recent.size() > Math.max(0, replaySize)) {
+                stream.since = stream.recent.removeFirst().sequence();
+            }
+            for (MultiEmitter<? super Event> subscriber : stream.subscribers) {
+                subscriber.emit(event);
+            }
+        }
+    }
+
+    private void replay(UserStream stream, String lastEventId, MultiEmitter<? super Event> emitter) {
+        if (lastEventId == null || lastEventId.isEmpty()) {
+            return;
+        }
+        long last = parseSequence(lastEventId);
+        if (last < stream.since) {
+            emitter.emit(RESET);
+            return;
+        }
+        for (Entry entry : stream.recent) {
+            if (entry.sequence() > last) {
+                emitter.emit(entry.event());
+            }
+        }
+    }
+
+    /**
+     * @return the event sequence or -1 if the id was not issued by this run of
+     *         the instance
+     */
+    private long parseSequence(String eventId) {
+        int dash = eventId.lastIndexOf('-');
+        if (dash < 0 || !epoch.equals(eventId.substring(0, dash))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(eventId.substring(dash + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void unsubscribe(UserStream stream, MultiEmitter<? super Event> emitter) {
+        synchronized (stream) {
+            stream.subscribers.remove(emitter);
+            if (stream.subscribers.isEmpty()) {
+                stream.idleSince = System.currentTimeMillis();
+            }
+        }
+    }
+
+    // streams of users without subscribers are kept for reconnecting clients
+    private void removeIdleStreams() {
+        long limit = System.currentTimeMillis() - replayTtl;
+        streams.values().removeIf(stream -> {
+            synchronized (stream) {
+                stream.removed = stream.subscribers.isEmpty() && stream.idleSince < limit;
+                return stream.removed;
+            }
+        });
+    }
+
+}
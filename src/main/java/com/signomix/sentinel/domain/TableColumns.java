@@ -0,0 +1,55 @@
+package com.signomix.sentinel.domain;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+import javax.sql.DataSource;
+
+/**
+ * Checks tables created by signomix-common against the columns this service
+ * reads or writes with its own SQL. The structure of those tables belongs to
+ * the signomix-common DAOs, so every class issuing its own statements checks
+ * the actual table once, at startup, and uses the DAOs (or refuses the
+ * request) when a column is missing, instead of failing on every statement.
+ */
+public final class TableColumns {
+
+    private TableColumns() {
+    }
+
+    /**
+     * @param dataSource the data source
+     * @param table      the table name
+     * @param columns    the required columns
+     * @return required columns missing in the table, all of them when the
+     *         table does not exist
+     * @throws SQLException if the database metadata cannot be read
+     */
+    public static List<String> missing(DataSource dataSource, String table, String... columns)
+            throws SQLException {
+        HashSet<String> present = new HashSet<>();
+        try (Connection conn = dataSource.getConnection()) {
+            DatabaseMetaData metaData = conn.getMetaData();
+            // unquoted names are stored in lower case by PostgreSQL
+            try (ResultSet rs = metaData.getColumns(null, null, table.toLowerCase(Locale.ROOT), null)) {
+                while (rs.next()) {
+                    present.add(rs.getString("COLUMN_NAME").toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        ArrayList<String> missing = new ArrayList<>();
+        for (String column : columns) {
+            if (!present.contains(column.toLowerCase(Locale.ROOT))) {
+                missing.add(column);
+            }
+        }
+        return missing;
+    }
+
+}
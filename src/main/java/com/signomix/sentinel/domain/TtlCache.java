@@ -0,0 +1,138 @@
+package com.signomix.sentinel.domain;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded read-through cache with expiring entries.
+ * Concurrent misses of the same key are loaded once: the first caller runs
+ * the loader and the others wait for its result. If the load fails, the
+ * waiting callers run the loader themselves. Null values are not cached.
+ * A load in progress when the key is invalidated returns its value to its
+ * callers but does not store it.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public final class TtlCache<K, V> {
+
+    @FunctionalInterface
+    public interface Loader<K, V, E extends Exception> {
+        V load(K key) throws E;
+    }
+
+    private record Entry<V>(V value, long expiresAt) {
+    }
+
+    private final int maxSize;
+    private final long ttl;
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxSize maximum number of entries
+     * @param ttl     entry lifetime in milliseconds
+     */
+    public TtlCache(int maxSize, long ttl) {
+        this.maxSize = Math.max(1, maxSize);
+        this.ttl = ttl;
+    }
+
+    /**
+     * Returns the cached value, loading it if needed.
+     *
+     * @param key    the key
+     * @param loader reads the value, may return null
+     * @return the value or null
+     * @throws E if the loader fails
+     */
+    public <E extends Exception> V get(K key, Loader<K, V, E> loader) throws E {
+        if (key == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.expiresAt() > now) {
+            hits.increment();
+            return entry.value();
+        }
+        misses.increment();
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> current = loading.putIfAbsent(key, future);
+        if (current != null) {
+            try {
+                return current.join();
+            } catch (CompletionException e) {
+                return loader.load(key);
+            }
+        }
+        try {
+            V value = loader.load(key);
+            // stored only if the key has not been invalidated during the load;
+            // invalidate() removes the future under the same lock
+            loading.computeIfPresent(key, (k, inProgress) -> {
+                if (inProgress != future) {
+                    return inProgress;
+                }
+                if (value == null) {
+                    entries.remove(key);
+                } else {
+                    if (entries.size() >= maxSize) {
+                        evict(now);
+                    }
+                    entries.put(key, new Entry<>(value, now + ttl));
+                }
+                return inProgress;
+            });
+            future.complete(value);
+            return value;
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    public void invalidate(K key) {
+        loading.remove(key);
+        entries.remove(key);
+    }
+
+    public void clear() {
+        loading.clear();
+        entries.clear();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes expired entries. If the cache is still full, removes entries until
+     * it is filled to 90% of its capacity.
+     */
+    private void evict(long now) {
+        entries.values().removeIf(entry -> entry.expiresAt() <= now);
+        int limit = maxSize - Math.max(1, maxSize / 10);
+        Iterator<K> it = entries.keySet().iterator();
+        while (entries.size() > limit && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+}
@@ -2,7 +2,6 @@ package com.signomix.sentinel.port.in;
 
 import org.jboss.logging.Logger;
 
-import com.signomix.common.Token;
 import com.signomix.common.User;
 import com.signomix.sentinel.domain.AuthLogic;
 
@@ -22,17 +21,8 @@ public class AuthPort {
         if(token!=null && token.endsWith("/")){
             token=token.substring(0,token.length()-1);
         }
-        logger.info("getUserId: "+token);
-        Token t=authLogic.getToken(token);
-        if(t!=null){
-            if(t.getIssuer()!=null && !t.getIssuer().isEmpty()){
-                return t.getIssuer();
-            }else{
-                return t.getUid();
-            }
-        }else{
-            return null;
-        }
+        logger.debug("getUserId: "+token);
+        return authLogic.getTokenUserId(token);
     }
 
     public User getUser(String token){
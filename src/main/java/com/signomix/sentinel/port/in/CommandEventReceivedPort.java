@@ -2,6 +2,7 @@ package com.signomix.sentinel.port.in;
 
 import com.signomix.sentinel.domain.CommandEventLogic;
 import com.signomix.sentinel.domain.EventLogic;
+import com.signomix.sentinel.domain.ShardFilter;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -12,8 +13,16 @@ public class CommandEventReceivedPort {
     @Inject
     CommandEventLogic commandEventLogic;
 
+    @Inject
+    ShardFilter shardFilter;
+
     public void receive(byte[] command, String messageId) {
         String commandString=new String(command);
+        String deviceEui=EventLogic.getCommandEui(commandString);
+        if(deviceEui!=null && !shardFilter.owns(deviceEui)){
+            // device owned by another instance
+            return;
+        }
         commandEventLogic.handleEvent(EventLogic.EVENT_TYPE_COMMAND, null,commandString, messageId);
     }
     
@@ -1,9 +1,14 @@
 package com.signomix.sentinel.port.in;
 
+import java.nio.charset.StandardCharsets;
+
 import org.jboss.logging.Logger;
 
 import com.signomix.sentinel.domain.DataEventLogic;
+import com.signomix.sentinel.domain.DataFrame;
 import com.signomix.sentinel.domain.EventLogic;
+import com.signomix.sentinel.domain.SentinelMetrics;
+import com.signomix.sentinel.domain.ShardFilter;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -15,21 +20,33 @@ public class DataEventReceivedPort {
     DataEventLogic dataEventLogic;
     @Inject
     Logger logger;
+    @Inject
+    SentinelMetrics metrics;
+    @Inject
+    ShardFilter shardFilter;
 
     public void receive(byte[] message, String messageId) {
-        String decodedMessage=new String(message);
-        logger.info("Data received: " + decodedMessage);
-        String[] messageArray=decodedMessage.split(",");
-        if(messageArray.length<1 || (messageArray.length>1 && messageArray.length<9)){
+        long start = System.nanoTime();
+        DataFrame frame = DataFrame.parse(message);
+        metrics.record(SentinelMetrics.Stage.PARSE, System.nanoTime() - start);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Data received: " + frame);
+        }
+        int fieldCount = frame.getFieldCount();
+        if (fieldCount > 0 && !shardFilter.owns(frame.getEui())) {
+            // device owned by another instance
+            return;
+        }
+        if (fieldCount < 1 || (fieldCount > 1 && fieldCount < DataFrame.HEADER_SIZE)) {
             //invalid message
-            logger.warn("Invalid message received: "+decodedMessage);
-        }else if(messageArray.length==1){
+            logger.warn("Invalid message received: " + new String(message, StandardCharsets.UTF_8));
+        } else if (fieldCount == 1) {
             //only EUI
-            dataEventLogic.handleEvent(EventLogic.EVENT_TYPE_DATA, messageArray[0],null, messageId);
-        }else{
-            dataEventLogic.handleEvent(EventLogic.EVENT_TYPE_DATA, messageArray, messageId);
+            dataEventLogic.handleEvent(EventLogic.EVENT_TYPE_DATA, frame.getEui(), null, messageId);
+        } else {
+            dataEventLogic.handleEvent(EventLogic.EVENT_TYPE_DATA, frame, messageId);
         }
-        
+
     }
     
 }
@@ -1,6 +1,7 @@
 package com.signomix.sentinel.port.in;
 
 import com.signomix.sentinel.domain.DeviceEventLogic;
+import com.signomix.sentinel.domain.ShardFilter;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -11,18 +12,30 @@ public class DeviceEventPort {
     @Inject
     DeviceEventLogic deviceEventLogic;
 
+    @Inject
+    ShardFilter shardFilter;
+
     public void deviceCreated(byte[] eui) {
         String deviceEui=new String(eui);
+        if(!shardFilter.owns(deviceEui)){
+            return;
+        }
         deviceEventLogic.handleDeviceCreatedEvent(deviceEui);
     }
 
     public void deviceRemoved(byte[] eui) {
         String deviceEui=new String(eui);
+        if(!shardFilter.owns(deviceEui)){
+            return;
+        }
         deviceEventLogic.handleDeviceRemovedEvent(deviceEui);
     }
 
     public void deviceUpdated(byte[] eui) {
         String deviceEui=new String(eui);
+        if(!shardFilter.owns(deviceEui)){
+            return;
+        }
         deviceEventLogic.handleDeviceUpdatedEvent(deviceEui);
     }
 
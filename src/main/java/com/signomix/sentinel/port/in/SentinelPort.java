@@ -1,13 +1,17 @@
 package com.signomix.sentinel.port.in;
 
 import java.util.List;
+import java.util.Map;
 
 import org.jboss.logging.Logger;
 
 import com.signomix.common.User;
 import com.signomix.common.iot.sentinel.SentinelConfig;
+import com.signomix.sentinel.domain.ExportLogic;
+import com.signomix.sentinel.domain.RuleBudget;
 import com.signomix.sentinel.domain.SentinelLogic;
 
+import io.smallrye.mutiny.Multi;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 
@@ -20,6 +24,9 @@ public class SentinelPort {
     @Inject
     SentinelLogic sentinelLogic;
 
+    @Inject
+    ExportLogic exportLogic;
+
     public SentinelConfig getConfig(User user, long id){
         logger.info("getSentinelConfig: "+id);
         return sentinelLogic.getSentinelConfig(user, id);
@@ -44,5 +51,37 @@ public class SentinelPort {
         logger.info("deleteSentinelConfig: "+id);
         sentinelLogic.deleteSentinelConfig(user, id);
     }
+
+    public void configChanged(byte[] id){
+        String configId=new String(id).trim();
+        logger.debug("sentinelConfigChanged: "+configId);
+        try {
+            sentinelLogic.handleConfigChanged(Long.parseLong(configId));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid sentinel config id: "+configId);
+        }
+    }
+
+    public boolean isAdmin(User user){
+        return sentinelLogic.isAdmin(user);
+    }
+
+    public List<RuleBudget.Quarantine> getQuarantinedConfigs(){
+        return sentinelLogic.getQuarantinedConfigs();
+    }
+
+    public boolean releaseQuarantinedConfig(long id){
+        logger.info("releaseQuarantinedConfig: "+id);
+        return sentinelLogic.releaseQuarantinedConfig(id);
+    }
+
+    public boolean canAccess(User user, SentinelConfig config){
+        return sentinelLogic.canAccess(user, config);
+    }
+
+    public Multi<Map<String, Object>> exportEvents(long id){
+        logger.info("exportSentinelEvents: "+id);
+        return exportLogic.exportEvents(id);
+    }
     
 }
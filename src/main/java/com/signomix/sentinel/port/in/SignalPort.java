@@ -1,13 +1,19 @@
 package com.signomix.sentinel.port.in;
 
+import java.sql.SQLException;
 import java.util.List;
 
 import org.jboss.logging.Logger;
 
 import com.signomix.common.User;
 import com.signomix.common.iot.sentinel.Signal;
+import com.signomix.sentinel.domain.ExportLogic;
+import com.signomix.sentinel.domain.RetentionLogic;
 import com.signomix.sentinel.domain.SignalLogic;
+import com.signomix.sentinel.domain.SignalPage;
+import com.signomix.sentinel.domain.SignalStream;
 
+import io.smallrye.mutiny.Multi;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 
@@ -23,10 +29,36 @@ public class SignalPort {
     @Inject
     SignalLogic signalLogic;
 
+    @Inject
+    ExportLogic exportLogic;
+
+    @Inject
+    SignalStream signalStream;
+
     public List<Signal> getSignals(User user, int limit, int offset) {
         return signalLogic.getSignals(user, limit, offset);
     }
 
+    public SignalPage getSignalPage(User user, int limit, String cursor, String deviceEui, Integer level,
+            Long sentinelConfigId, Long from, Long to) throws SQLException {
+        return signalLogic.getSignalPage(user, limit, cursor, deviceEui, level, sentinelConfigId, from, to);
+    }
+
+    public Multi<Signal> exportSignals(User user, String deviceEui, Integer level, Long sentinelConfigId,
+            Long from, Long to) {
+        logger.info("exportSignals: " + user.uid);
+        return exportLogic.exportSignals(user, deviceEui, level, sentinelConfigId, from, to);
+    }
+
+    public Multi<SignalStream.Event> streamSignals(User user, String lastEventId) {
+        logger.debug("streamSignals: " + user.uid + " " + lastEventId);
+        return signalStream.subscribe(user.uid, lastEventId);
+    }
+
+    public void signalCreated(byte[] signal) {
+        signalStream.receive(signal);
+    }
+
     public Signal getSignal(User user, long id) {
         return signalLogic.getSignal(user, id);
     }
@@ -35,7 +67,15 @@ public class SignalPort {
         signalLogic.deleteSignal(user, id);
     }
 
-    public void deleteSignals(User user) {
-        signalLogic.deleteSignals(user);
+    public RetentionLogic.Job deleteSignals(User user) {
+        return signalLogic.deleteSignals(user);
+    }
+
+    public List<RetentionLogic.Job> getDeletionJobs(User user) {
+        return signalLogic.getDeletionJobs(user);
+    }
+
+    public RetentionLogic.Job getDeletionJob(User user, String id) {
+        return signalLogic.getDeletionJob(user, id);
     }
 }
\ No newline at end of file
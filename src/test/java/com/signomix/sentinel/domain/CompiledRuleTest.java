@@ -0,0 +1,177 @@
+package com.signomix.sentinel.domain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.signomix.common.iot.sentinel.AlarmCondition;
+import com.signomix.common.iot.sentinel.SentinelConfig;
+
+class CompiledRuleTest {
+
+    private static final int[] OPERATORS = { AlarmCondition.CONDITION_GREATER, AlarmCondition.CONDITION_LESS,
+            AlarmCondition.CONDITION_EQUAL, AlarmCondition.CONDITION_NOT_EQUAL };
+    private static final String[] MEASUREMENTS = { "temperature", "humidity", "pressure" };
+
+    @Test
+    void matchesConditionCheckReplacedByCompiledRules() {
+        Random random = new Random(42);
+        for (int run = 0; run < 20000; run++) {
+            SentinelConfig config = randomConfig(random, run);
+            int count = random.nextInt(MEASUREMENTS.length + 1);
+            String[] names = new String[count];
+            double[] values = new double[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = random.nextBoolean() ? MEASUREMENTS[i] : MEASUREMENTS[i].toUpperCase();
+                values[i] = random.nextInt(7) - 3;
+            }
+            int deviceRuleStatus = random.nextInt(3) - 1;
+
+            ConditionResult expected = legacyCheck(config, names, values, count, deviceRuleStatus);
+            ConditionResult actual = new ConditionResult();
+            CompiledRule.compile(config).evaluate(names, values, count, deviceRuleStatus, actual);
+
+            String message = "run " + run;
+            assertEquals(expected.violated, actual.violated, message);
+            assertEquals(expected.failed, actual.failed, message);
+            assertEquals(expected.value, actual.value, message);
+        }
+    }
+
+    @Test
+    void sharedRuleGivesSameResultForDifferentFrameLayouts() {
+        SentinelConfig config = config(1, List.of(
+                condition("temperature", AlarmCondition.CONDITION_GREATER, 20.0, null)));
+        CompiledRule rule = CompiledRule.compile(config);
+        ConditionResult result = new ConditionResult();
+
+        rule.evaluate(new String[] { "temperature", "humidity" }, new double[] { 25, 10 }, 2, 0, result);
+        assertTrue(result.violated);
+        rule.evaluate(new String[] { "humidity", "temperature" }, new double[] { 25, 10 }, 2, 0, result);
+        assertFalse(result.violated);
+        rule.evaluate(new String[] { "humidity" }, new double[] { 25 }, 1, 0, result);
+        assertTrue(result.failed);
+    }
+
+    private static SentinelConfig randomConfig(Random random, long id) {
+        List<Object> conditions = new ArrayList<>();
+        int size = 1 + random.nextInt(3);
+        for (int i = 0; i < size; i++) {
+            Map<String, Object> condition = condition(MEASUREMENTS[random.nextInt(MEASUREMENTS.length)],
+                    OPERATORS[random.nextInt(OPERATORS.length)], (double) (random.nextInt(5) - 2),
+                    i == 0 ? null : random.nextBoolean() ? AlarmCondition.CONDITION_OPERATOR_AND
+                            : AlarmCondition.CONDITION_OPERATOR_OR);
+            if (random.nextBoolean()) {
+                condition.put("logic", 1 + random.nextInt(2));
+                condition.put("condition2", OPERATORS[random.nextInt(OPERATORS.length)]);
+                condition.put("value2", (double) (random.nextInt(5) - 2));
+            }
+            conditions.add(condition);
+        }
+        SentinelConfig config = config(id, conditions);
+        config.hysteresis = (double) random.nextInt(2);
+        return config;
+    }
+
+    private static SentinelConfig config(long id, List<Object> conditions) {
+        SentinelConfig config = new SentinelConfig();
+        config.id = id;
+        config.conditions = conditions;
+        config.hysteresis = 0.0;
+        return config;
+    }
+
+    private static Map<String, Object> condition(String measurement, int operator, Double value,
+            Integer conditionOperator) {
+        Map<String, Object> condition = new LinkedHashMap<>();
+        condition.put("measurement", measurement);
+        condition.put("condition1", operator);
+        condition.put("value1", value);
+        condition.put("conditionOperator", conditionOperator);
+        return condition;
+    }
+
+    /**
+     * Condition check used before rules were compiled, reduced to the frame
+     * values it was given.
+     */
+    private static ConditionResult legacyCheck(SentinelConfig config, String[] names, double[] values,
+            int count, int deviceRuleStatus) {
+        ConditionResult result = new ConditionResult();
+        result.measurement = "";
+        result.failed = true;
+        boolean conditionsMet = false;
+        List conditions = config.conditions;
+        for (int i = 0; i < conditions.size(); i++) {
+            boolean actualConditionMet = false;
+            if (i > 1) {
+                break;
+            }
+            if (count == 0) {
+                continue;
+            }
+            Map conditionMap = (Map) conditions.get(i);
+            String measurement = (String) conditionMap.get("measurement");
+            Integer condition1 = (Integer) conditionMap.get("condition1");
+            Double value1 = (Double) conditionMap.get("value1");
+            Integer condition2 = (Integer) conditionMap.get("condition2");
+            Double value2 = (Double) conditionMap.get("value2");
+            Integer logic = (Integer) conditionMap.get("logic");
+            Integer conditionOperator = (Integer) conditionMap.get("conditionOperator");
+            result.measurement = measurement;
+            Double valueToCheck = null;
+            for (int j = 0; j < count; j++) {
+                if (names[j].equalsIgnoreCase(measurement)) {
+                    valueToCheck = values[j];
+                    break;
+                }
+            }
+            if (valueToCheck == null) {
+                break;
+            }
+            double hysteresis = Math.abs(config.hysteresis) * (deviceRuleStatus > 0 ? -1 : 1);
+            if (condition1 == AlarmCondition.CONDITION_GREATER) {
+                actualConditionMet = valueToCheck.compareTo(value1 + hysteresis) > 0;
+            } else if (condition1 == AlarmCondition.CONDITION_LESS) {
+                actualConditionMet = valueToCheck.compareTo(value1 - hysteresis) < 0;
+            } else if (condition1 == AlarmCondition.CONDITION_EQUAL) {
+                actualConditionMet = valueToCheck.compareTo(value1) == 0;
+            } else if (condition1 == AlarmCondition.CONDITION_NOT_EQUAL) {
+                actualConditionMet = valueToCheck.compareTo(value1) != 0;
+            }
+            if (logic != null && logic > 0 && value2 != null) {
+                boolean met2 = false;
+                if (condition2 == AlarmCondition.CONDITION_GREATER) {
+                    met2 = valueToCheck.compareTo(value2 + hysteresis) > 0;
+                } else if (condition2 == AlarmCondition.CONDITION_LESS) {
+                    met2 = valueToCheck.compareTo(value2 - hysteresis) < 0;
+                } else if (condition2 == AlarmCondition.CONDITION_EQUAL) {
+                    met2 = valueToCheck.compareTo(value2) == 0;
+                } else if (condition2 == AlarmCondition.CONDITION_NOT_EQUAL) {
+                    met2 = valueToCheck.compareTo(value2) != 0;
+                }
+                actualConditionMet = logic == 1 ? actualConditionMet || met2 : actualConditionMet && met2;
+            }
+            if (i == 0) {
+                conditionsMet = actualConditionMet;
+            } else if (conditionOperator != null && conditionOperator == AlarmCondition.CONDITION_OPERATOR_AND) {
+                conditionsMet = conditionsMet && actualConditionMet;
+            } else if (conditionOperator != null && conditionOperator == AlarmCondition.CONDITION_OPERATOR_OR) {
+                conditionsMet = conditionsMet || actualConditionMet;
+            }
+            result.failed = false;
+            result.value = valueToCheck;
+        }
+        result.violated = conditionsMet;
+        return result;
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.signomix.sentinel.domain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class DataFrameTest {
+
+    @Test
+    void headerAndMeasurementsAreParsed() {
+        DataFrame frame = parse("EUI1,2,name,1,0,52.1,21.0,100,,temperature=21.5,humidity=40");
+        assertEquals("EUI1", frame.getEui());
+        assertEquals("name", frame.getHeader(2));
+        assertEquals("", frame.getHeader(8));
+        assertEquals(11, frame.getFieldCount());
+        assertEquals(2, frame.getCount());
+        assertEquals("temperature", frame.getNames()[0]);
+        assertEquals(21.5, frame.getValues()[0]);
+        assertEquals("humidity", frame.getNames()[1]);
+        assertEquals(40.0, frame.getValues()[1]);
+    }
+
+    @Test
+    void invalidMeasurementsAreSkipped() {
+        DataFrame frame = parse("EUI1,1,name,1,0,0,0,0,,a=1,b,=2,c=x,d=1=2,e=,f=3");
+        assertEquals(2, frame.getCount());
+        assertEquals(1.0, frame.getValuesMap().get("a"));
+        assertEquals(3.0, frame.getValuesMap().get("f"));
+        // fields are counted whether they are valid or not
+        assertEquals(16, frame.getFieldCount());
+    }
+
+    @Test
+    void trailingEmptyFieldsAreNotCounted() {
+        assertEquals(10, parse("EUI1,1,name,1,0,0,0,0,,a=1,,").getFieldCount());
+        assertEquals(3, parse("EUI1,1,name").getFieldCount());
+    }
+
+    @Test
+    void shortMessageHasNoMeasurements() {
+        DataFrame frame = parse("EUI1,1");
+        assertEquals("EUI1", frame.getEui());
+        assertNull(frame.getHeader(2));
+        assertEquals(0, frame.getCount());
+        assertEquals(0, parse("").getFieldCount());
+    }
+
+    @Test
+    void multiByteNamesAreDecoded() {
+        DataFrame frame = parse("EUI1,1,urządzenie,1,0,0,0,0,,temperatura_zewnętrzna=-3.5");
+        assertEquals("urządzenie", frame.getHeader(2));
+        assertEquals(-3.5, frame.getValuesMap().get("temperatura_zewnętrzna"));
+    }
+
+    @Test
+    void numbersMatchDoubleParseDouble() {
+        String[] numbers = { "0", "-0", "+0", "0.0", "-0.0", "1", "-1", "+1", "1.", ".5", "-.5", "007",
+                "000123.4500", " 12.5 ", "\t3", "0.1", "0.2", "0.3", "1.7976931348623157",
+                "123456789012345", "1234567890123456", "12345678901234567890", "999999999999999.9",
+                "0.000000000000000000001", "0.0000000000000000000001", "0.00000000000000000000001",
+                "1.00000000000000000000", "9007199254740993", "1e3", "1E-3", "-2.5e+10", "1d", "1f",
+                "NaN", "Infinity", "-Infinity", "4.9e-324", "2.2250738585072014E-308" };
+        for (String number : numbers) {
+            assertParsed(number);
+        }
+    }
+
+    @Test
+    void invalidNumbersAreRejected() {
+        String[] numbers = { "", " ", "-", "+", ".", "-.", "1.2.3", "1 2", "--1", "1-", "0x10", "abc", "1,5" };
+        for (String number : numbers) {
+            byte[] data = number.getBytes(StandardCharsets.US_ASCII);
+            assertThrows(NumberFormatException.class, () -> DataFrame.parseDouble(data, 0, data.length), number);
+        }
+    }
+
+    @Test
+    void randomDecimalsMatchDoubleParseDouble() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            // up to 17 significant digits, so the slow path is covered as well
+            long mantissa = random.nextLong() % (long) Math.pow(10, 1 + random.nextInt(17));
+            String number = BigDecimal.valueOf(mantissa, random.nextInt(25)).toPlainString();
+            assertParsed(number);
+            assertParsed(Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(30) - 15)));
+        }
+    }
+
+    @Test
+    void numberIsParsedWithinBounds() {
+        byte[] data = "a=12.5,b=7".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(12.5, DataFrame.parseDouble(data, 2, 6));
+        assertEquals(7.0, DataFrame.parseDouble(data, 9, 10));
+    }
+
+    private static void assertParsed(String number) {
+        byte[] data = number.getBytes(StandardCharsets.US_ASCII);
+        assertEquals(Double.parseDouble(number), DataFrame.parseDouble(data, 0, data.length), number);
+    }
+
+    private static DataFrame parse(String message) {
+        return DataFrame.parse(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.signomix.sentinel.domain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.signomix.common.iot.sentinel.AlarmCondition;
+import com.signomix.common.iot.sentinel.SentinelConfig;
+
+class FrameCoalescerTest {
+
+    @Test
+    void frameHoldsMeasurementsOfAllFramesInBatch() {
+        CompiledRule rule = CompiledRule.compile(config(AlarmCondition.CONDITION_GREATER, 20.0));
+        FrameCoalescer.Batch batch = new FrameCoalescer.Batch(null, frame("temperature=30,humidity=5"));
+        batch.add(null, frame("humidity=6,pressure=1000"));
+
+        DataFrame frame = batch.getFrame(rule);
+        Map<String, Double> values = frame.getValuesMap();
+        assertEquals(3, frame.getCount());
+        assertEquals(30.0, values.get("temperature"));
+        assertEquals(6.0, values.get("humidity"));
+        assertEquals(1000.0, values.get("pressure"));
+        assertEquals("EUI1", frame.getEui());
+
+        ConditionResult result = new ConditionResult();
+        rule.evaluate(frame.getNames(), frame.getValues(), frame.getCount(), 0, result);
+        assertTrue(result.violated);
+    }
+
+    @Test
+    void checkedMeasurementsHaveExtremes() {
+        CompiledRule rule = CompiledRule.compile(config(AlarmCondition.CONDITION_LESS, 0.0));
+        FrameCoalescer.Batch batch = new FrameCoalescer.Batch(null, frame("temperature=5"));
+        batch.add(null, frame("temperature=-3"));
+        batch.add(null, frame("temperature=7"));
+
+        assertEquals(-3.0, batch.getFrame(rule).getValuesMap().get("temperature"));
+        // script rules get the latest frame
+        assertEquals(7.0, batch.getFrame(null).getValuesMap().get("temperature"));
+    }
+
+    @Test
+    void singleFrameIsNotCopied() {
+        DataFrame frame = frame("temperature=5");
+        FrameCoalescer.Batch batch = new FrameCoalescer.Batch(null, frame);
+        assertSame(frame, batch.getFrame(CompiledRule.compile(config(AlarmCondition.CONDITION_LESS, 0.0))));
+    }
+
+    private static DataFrame frame(String measurements) {
+        return DataFrame.parse(("EUI1,1,device,1,0,0,0,0,," + measurements).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static SentinelConfig config(int operator, double value) {
+        Map<String, Object> condition = new LinkedHashMap<>();
+        condition.put("measurement", "temperature");
+        condition.put("condition1", operator);
+        condition.put("value1", value);
+        condition.put("conditionOperator", null);
+        SentinelConfig config = new SentinelConfig();
+        config.id = 1L;
+        config.conditions = List.of(condition);
+        config.hysteresis = 0.0;
+        return config;
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.signomix.sentinel.domain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import com.signomix.common.iot.sentinel.SentinelConfig;
+
+class MessageTemplateTest {
+
+    private static final String[] TEMPLATES = {
+            "",
+            "no variables",
+            "{device.eui}",
+            "Device {device.name} ({device.eui}): {measurement}={value}",
+            "{target.eui}/{target.name} {tag.name}:{tag.value} {var} {value}{value}",
+            "{device.eui}{device.eui} at start and end {value}",
+            "unknown {foo} and {device.eui {{device.eui}} {",
+            "Alert {info}{device.name}: {measurement} is {value}",
+            "{info}",
+            "subject only{info}" };
+
+    private final EventLogic eventLogic = new DataEventLogic();
+
+    @Test
+    void renderingMatchesReplaceAll() {
+        String[][] valueSets = {
+                { "EUI1", "Device 1", "temperature", "21.5", "GROUP1", "Group 1", "location", "room 1" },
+                { "", "", "humidity", "-3.0", "", "", "", "" },
+                { "EUI2", "ąęś łódź", "t", "1.0E10", "T", "Tn", "a b", "room {2}" } };
+        for (String template : TEMPLATES) {
+            MessageTemplates.Message message = MessageTemplates.Message.parse(template);
+            for (String[] set : valueSets) {
+                String[] values = values(set);
+                assertEquals(transformMessage(subject(template), set), render(message.subject(), values), template);
+                assertEquals(transformMessage(body(template), set), render(message.body(), values), template);
+            }
+        }
+    }
+
+    @Test
+    void unknownMeasurementAndValueAreLeftAsWritten() {
+        SentinelConfig config = new SentinelConfig();
+        config.tagName = "location";
+        config.tagValue = "room 1";
+        String[] values = eventLogic.getMessageValues(config, null, null, new ConditionResult());
+        assertEquals("{measurement}={value} ({var}) at location:room 1",
+                render("{measurement}={value} ({var}) at {tag.name}:{tag.value}", values));
+    }
+
+    @Test
+    void missingConfigAndDeviceFieldsAreRenderedEmpty() {
+        // replaceAll threw a NullPointerException for a config without tag
+        SentinelConfig config = new SentinelConfig();
+        ConditionResult result = new ConditionResult();
+        result.measurement = "temperature";
+        result.value = 30.0;
+        String[] values = eventLogic.getMessageValues(config, null, null, result);
+        assertEquals("[:] [] [/] temperature=30.0",
+                render("[{tag.name}:{tag.value}] [{device.eui}{device.name}] [{target.eui}/{target.name}] "
+                        + "{measurement}={value}", values));
+    }
+
+    @Test
+    void valuesAreInsertedLiterally() {
+        String[] values = new String[MessageTemplate.VARIABLE_COUNT];
+        values[MessageTemplate.Variable.DEVICE_NAME.ordinal()] = "cost $1 \\ 50% $0 \\$";
+        values[MessageTemplate.Variable.DEVICE_EUI.ordinal()] = "{device.name}";
+        assertEquals("cost $1 \\ 50% $0 \\$ / {device.name}", render("{device.name} / {device.eui}", values));
+    }
+
+    @Test
+    void nullValueRendersPlaceholder() {
+        String[] values = new String[MessageTemplate.VARIABLE_COUNT];
+        assertEquals("{device.eui} {value}", render("{device.eui} {value}", values));
+        assertEquals("", render((String) null, values));
+    }
+
+    private static String render(String template, String[] values) {
+        return render(MessageTemplate.parse(template), values);
+    }
+
+    private static String render(MessageTemplate template, String[] values) {
+        StringBuilder sb = new StringBuilder();
+        template.render(sb, values);
+        return sb.toString();
+    }
+
+    // { deviceEui, deviceName, measurement, value, targetEui, targetName, tagName, tagValue }
+    private static String[] values(String[] set) {
+        String[] values = new String[MessageTemplate.VARIABLE_COUNT];
+        values[MessageTemplate.Variable.DEVICE_EUI.ordinal()] = set[0];
+        values[MessageTemplate.Variable.DEVICE_NAME.ordinal()] = set[1];
+        values[MessageTemplate.Variable.MEASUREMENT.ordinal()] = set[2];
+        values[MessageTemplate.Variable.VAR.ordinal()] = set[2];
+        values[MessageTemplate.Variable.VALUE.ordinal()] = set[3];
+        values[MessageTemplate.Variable.TARGET_EUI.ordinal()] = set[4];
+        values[MessageTemplate.Variable.TARGET_NAME.ordinal()] = set[5];
+        values[MessageTemplate.Variable.TAG_NAME.ordinal()] = set[6];
+        values[MessageTemplate.Variable.TAG_VALUE.ordinal()] = set[7];
+        return values;
+    }
+
+    // message rendering replaced by MessageTemplate, for values without '$',
+    // '\' and variables (replaceAll replaced variables found in earlier values)
+    private static String transformMessage(String message, String[] set) {
+        String result = message;
+        result = result.replaceAll("\\{target.eui\\}", set[4]);
+        result = result.replaceAll("\\{target.name\\}", set[5]);
+        result = result.replaceAll("\\{tag.name\\}", set[6]);
+        result = result.replaceAll("\\{tag.value\\}", set[7]);
+        result = result.replaceAll("\\{device.eui\\}", set[0]);
+        result = result.replaceAll("\\{device.name\\}", set[1]);
+        result = result.replaceAll("\\{measurement\\}", set[2]);
+        result = result.replaceAll("\\{var\\}", set[2]);
+        result = result.replaceAll("\\{value\\}", set[3]);
+        return result;
+    }
+
+    private static String subject(String message) {
+        int idx = message.indexOf("{info}");
+        return idx < 0 ? "" : message.substring(0, idx);
+    }
+
+    private static String body(String message) {
+        int idx = message.indexOf("{info}");
+        return idx < 0 ? message : message.substring(idx + 6);
+    }
+
+}
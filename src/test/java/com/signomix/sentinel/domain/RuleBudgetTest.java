@@ -0,0 +1,62 @@
+package com.signomix.sentinel.domain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.signomix.common.iot.sentinel.SentinelConfig;
+
+class RuleBudgetTest {
+
+    private RuleBudget ruleBudget;
+
+    @BeforeEach
+    void setUp() {
+        ruleBudget = new RuleBudget();
+        ruleBudget.logger = Logger.getLogger(RuleBudget.class);
+        ruleBudget.budget = 100;
+        ruleBudget.minEvaluations = 10;
+        ruleBudget.window = 60000;
+    }
+
+    @Test
+    void ruleCoveringManyDevicesIsNotQuarantined() {
+        SentinelConfig config = config(1);
+        // 20000 devices, 5 ms each: 100 s of evaluation within the window
+        for (int i = 0; i < 20000; i++) {
+            assertNull(ruleBudget.record(config, 5_000_000L));
+        }
+        assertFalse(ruleBudget.isQuarantined(config.id));
+    }
+
+    @Test
+    void slowRuleIsQuarantinedAfterMinimumEvaluations() {
+        SentinelConfig config = config(2);
+        for (int i = 0; i < 9; i++) {
+            assertNull(ruleBudget.record(config, 2_000_000_000L));
+        }
+        RuleBudget.Quarantine quarantine = ruleBudget.record(config, 2_000_000_000L);
+        assertNotNull(quarantine);
+        assertEquals(2000, quarantine.cost());
+        assertEquals(10, quarantine.evaluations());
+        assertTrue(ruleBudget.isQuarantined(config.id));
+
+        assertTrue(ruleBudget.release(config.id));
+        assertFalse(ruleBudget.isQuarantined(config.id));
+    }
+
+    private static SentinelConfig config(long id) {
+        SentinelConfig config = new SentinelConfig();
+        config.id = id;
+        config.name = "rule" + id;
+        config.userId = "user";
+        return config;
+    }
+
+}
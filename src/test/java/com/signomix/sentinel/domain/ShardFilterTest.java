@@ -0,0 +1,67 @@
+package com.signomix.sentinel.domain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ShardFilterTest {
+
+    private static final int DEVICES = 100000;
+
+    @Test
+    void shardIsStableAndInRange() {
+        for (int count = 1; count <= 16; count++) {
+            for (int i = 0; i < 1000; i++) {
+                String eui = "DEVICE-" + i;
+                int shard = ShardFilter.shardOf(eui, count);
+                assertTrue(shard >= 0 && shard < count);
+                assertEquals(shard, ShardFilter.shardOf(new String(eui), count));
+            }
+        }
+        assertEquals(0, ShardFilter.shardOf("DEVICE-1", 1));
+    }
+
+    @Test
+    void addingShardMovesDevicesOnlyToNewShard() {
+        for (int count = 1; count < 10; count++) {
+            int moved = 0;
+            for (int i = 0; i < DEVICES; i++) {
+                String eui = "DEVICE-" + i;
+                int before = ShardFilter.shardOf(eui, count);
+                int after = ShardFilter.shardOf(eui, count + 1);
+                if (before != after) {
+                    assertEquals(count, after, eui);
+                    moved++;
+                }
+            }
+            // about 1/(count+1) of devices move
+            double expected = (double) DEVICES / (count + 1);
+            assertTrue(Math.abs(moved - expected) < expected * 0.05, "moved " + moved + " of " + DEVICES);
+        }
+    }
+
+    @Test
+    void devicesAreSpreadEvenly() {
+        int count = 8;
+        int[] sizes = new int[count];
+        for (int i = 0; i < DEVICES; i++) {
+            sizes[ShardFilter.shardOf("DEVICE-" + i, count)]++;
+        }
+        for (int size : sizes) {
+            assertTrue(Math.abs(size - DEVICES / count) < DEVICES / count * 0.05, "shard size " + size);
+        }
+    }
+
+    @Test
+    void commandShardKeyIgnoresPrefix() {
+        assertEquals("EUI1", EventLogic.getCommandEui("EUI1;{}"));
+        assertEquals("EUI1", EventLogic.getCommandEui("&EUI1;{}"));
+        assertEquals("EUI1", EventLogic.getCommandEui("#EUI1;{}"));
+        assertNull(EventLogic.getCommandEui("&;{}"));
+        assertNull(EventLogic.getCommandEui("EUI1"));
+        assertEquals(ShardFilter.shardOf("EUI1", 5), ShardFilter.shardOf(EventLogic.getCommandEui("#EUI1;{}"), 5));
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.signomix.sentinel.domain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class TtlCacheTest {
+
+    private static final int THREADS = 8;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void valueIsLoadedOnceUntilExpired() {
+        AtomicInteger loads = new AtomicInteger();
+        TtlCache<String, String> cache = new TtlCache<>(10, 60000);
+        assertEquals("a1", cache.get("a", key -> key + loads.incrementAndGet()));
+        assertEquals("a1", cache.get("a", key -> key + loads.incrementAndGet()));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        TtlCache<String, String> expiring = new TtlCache<>(10, 0);
+        assertEquals("a2", expiring.get("a", key -> key + loads.incrementAndGet()));
+        assertEquals("a3", expiring.get("a", key -> key + loads.incrementAndGet()));
+    }
+
+    @Test
+    void nullValuesAreNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        TtlCache<String, String> cache = new TtlCache<>(10, 60000);
+        assertNull(cache.get("a", key -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertNull(cache.get("a", key -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.size());
+        assertNull(cache.get(null, key -> "never"));
+    }
+
+    @Test
+    void concurrentMissesLoadOnce() throws Exception {
+        TtlCache<String, String> cache = new TtlCache<>(10, 60000);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> results = getConcurrently(cache, key -> {
+            loads.incrementAndGet();
+            release.await();
+            return "value";
+        });
+        waitForMisses(cache, THREADS);
+        release.countDown();
+        for (Future<String> result : results) {
+            assertEquals("value", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void waitingCallersLoadAgainAfterFailure() throws Exception {
+        TtlCache<String, String> cache = new TtlCache<>(10, 60000);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> results = getConcurrently(cache, key -> {
+            if (loads.incrementAndGet() == 1) {
+                release.await();
+                throw new IOException("database not available");
+            }
+            return "value";
+        });
+        waitForMisses(cache, THREADS);
+        release.countDown();
+        int failed = 0;
+        for (Future<String> result : results) {
+            try {
+                assertEquals("value", result.get(5, TimeUnit.SECONDS));
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+                failed++;
+            }
+        }
+        // only the caller which ran the failed load gets its exception
+        assertEquals(1, failed);
+        // values loaded by the waiting callers are not stored
+        assertEquals(0, cache.size());
+        assertEquals("reloaded", cache.get("key", key -> "reloaded"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void loadFinishedAfterInvalidateIsNotStored() throws Exception {
+        TtlCache<String, String> cache = new TtlCache<>(10, 60000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> stale = executor.submit(() -> cache.get("key", key -> {
+            started.countDown();
+            release.await();
+            return "old";
+        }));
+        started.await();
+        cache.invalidate("key");
+        release.countDown();
+        assertEquals("old", stale.get(5, TimeUnit.SECONDS));
+        assertEquals(0, cache.size());
+        assertEquals("new", cache.get("key", key -> "new"));
+        assertEquals("new", cache.get("key", key -> "newer"));
+    }
+
+    @Test
+    void fullCacheIsEvicted() {
+        TtlCache<Integer, Integer> cache = new TtlCache<>(10, 60000);
+        for (int i = 0; i < 10; i++) {
+            cache.get(i, key -> key);
+        }
+        assertEquals(10, cache.size());
+        cache.get(10, key -> key);
+        // filled to 90% before the new entry is added
+        assertEquals(10, cache.size());
+        assertEquals(10, cache.get(10, key -> -1));
+
+        TtlCache<Integer, Integer> expiring = new TtlCache<>(10, 0);
+        for (int i = 0; i < 11; i++) {
+            expiring.get(i, key -> key);
+        }
+        // expired entries are removed first
+        assertEquals(1, expiring.size());
+    }
+
+    private List<Future<String>> getConcurrently(TtlCache<String, String> cache,
+            TtlCache.Loader<String, String, Exception> loader) {
+        ArrayList<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> cache.get("key", loader)));
+        }
+        return results;
+    }
+
+    private static void waitForMisses(TtlCache<?, ?> cache, int misses) throws InterruptedException {
+        for (int i = 0; i < 500 && cache.getMisses() < misses; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(misses, cache.getMisses());
+    }
+
+}